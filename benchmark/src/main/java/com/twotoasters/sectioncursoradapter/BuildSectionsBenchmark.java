@@ -0,0 +1,83 @@
+package com.twotoasters.sectioncursoradapter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building sections the way SectionCursorAdapter.buildSections(Cursor) does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BuildSectionsBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rowCount;
+
+    @Param({"1", "100", "10000"})
+    public int rowsPerSection;
+
+    private FakeCursor mCursor;
+    private int mSectionColumn;
+    private SectionKey mSectionKey;
+
+    @Setup
+    public void setUp() {
+        mCursor = new FakeCursor(rowCount, rowsPerSection);
+        mSectionColumn = mCursor.getColumnIndex(FakeCursor.SECTION);
+        mSectionKey = SectionKey.intValue(FakeCursor.SECTION);
+    }
+
+    /**
+     * getSectionFromCursor returning a boxed section for every row of a sorted cursor.
+     */
+    @Benchmark
+    public SectionIndex sortedSectionObjects() {
+        return buildFromSectionObjects(true);
+    }
+
+    /**
+     * getSectionFromCursor with isCursorSortedBySection() returning false.
+     */
+    @Benchmark
+    public SectionIndex unsortedSectionObjects() {
+        return buildFromSectionObjects(false);
+    }
+
+    /**
+     * getSectionKey() returning SectionKey.intValue.
+     */
+    @Benchmark
+    public SectionIndex sectionKey() {
+        SectionIndex.Builder builder = new SectionIndex.Builder(true);
+        SectionKey.Scanner scanner = mSectionKey.newScanner(mCursor);
+        mCursor.moveToPosition(-1);
+        while (mCursor.moveToNext()) {
+            builder.appendRow(mCursor, scanner);
+        }
+        return builder.build();
+    }
+
+    private SectionIndex buildFromSectionObjects(boolean sorted) {
+        SectionIndex.Builder builder = new SectionIndex.Builder(sorted);
+        mCursor.moveToPosition(-1);
+        while (mCursor.moveToNext()) {
+            builder.appendRow(Integer.valueOf(mCursor.getInt(mSectionColumn)));
+        }
+        return builder.build();
+    }
+}
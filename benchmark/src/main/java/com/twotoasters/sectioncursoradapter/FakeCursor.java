@@ -0,0 +1,253 @@
+package com.twotoasters.sectioncursoradapter;
+
+import android.content.ContentResolver;
+import android.database.CharArrayBuffer;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.net.Uri;
+import android.os.Bundle;
+
+/**
+ * An in-memory cursor which runs on the JVM. Row n has an _id of n and is in section n / rowsPerSection.
+ */
+public class FakeCursor implements Cursor {
+
+    public static final String SECTION = "section";
+
+    private static final String[] COLUMNS = {"_id", SECTION};
+    private static final int ID_COLUMN = 0;
+    private static final int SECTION_COLUMN = 1;
+
+    private final int mCount;
+    private final int mRowsPerSection;
+    private int mPosition = -1;
+    private boolean mClosed;
+
+    public FakeCursor(int count, int rowsPerSection) {
+        mCount = count;
+        mRowsPerSection = rowsPerSection;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public int getPosition() {
+        return mPosition;
+    }
+
+    @Override
+    public boolean move(int offset) {
+        return moveToPosition(mPosition + offset);
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        if (position >= mCount) {
+            mPosition = mCount;
+            return false;
+        } else if (position < 0) {
+            mPosition = -1;
+            return false;
+        }
+        mPosition = position;
+        return true;
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return moveToPosition(mCount - 1);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(mPosition + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(mPosition - 1);
+    }
+
+    @Override
+    public boolean isFirst() {
+        return mPosition == 0 && mCount != 0;
+    }
+
+    @Override
+    public boolean isLast() {
+        return mPosition == mCount - 1 && mCount != 0;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return mCount == 0 || mPosition == -1;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return mCount == 0 || mPosition == mCount;
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName) {
+        int index = getColumnIndex(columnName);
+        if (index < 0) {
+            throw new IllegalArgumentException("column '" + columnName + "' does not exist");
+        }
+        return index;
+    }
+
+    @Override
+    public String getColumnName(int columnIndex) {
+        return COLUMNS[columnIndex];
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return COLUMNS.clone();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        return Long.toString(getLong(columnIndex));
+    }
+
+    @Override
+    public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public short getShort(int columnIndex) {
+        return (short) getLong(columnIndex);
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        return (int) getLong(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        if (mPosition < 0 || mPosition >= mCount) {
+            throw new IllegalStateException("Cursor is not on a row: " + mPosition);
+        }
+        switch (columnIndex) {
+            case ID_COLUMN:
+                return mPosition;
+            case SECTION_COLUMN:
+                return mPosition / mRowsPerSection;
+            default:
+                throw new IllegalArgumentException("Unknown column " + columnIndex);
+        }
+    }
+
+    @Override
+    public float getFloat(int columnIndex) {
+        return getLong(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        return getLong(columnIndex);
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        return FIELD_TYPE_INTEGER;
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        return false;
+    }
+
+    @Override
+    @Deprecated
+    public void deactivate() {
+    }
+
+    @Override
+    @Deprecated
+    public boolean requery() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    @Override
+    public void registerContentObserver(ContentObserver observer) {
+    }
+
+    @Override
+    public void unregisterContentObserver(ContentObserver observer) {
+    }
+
+    @Override
+    public void registerDataSetObserver(DataSetObserver observer) {
+    }
+
+    @Override
+    public void unregisterDataSetObserver(DataSetObserver observer) {
+    }
+
+    @Override
+    public void setNotificationUri(ContentResolver cr, Uri uri) {
+    }
+
+    public Uri getNotificationUri() {
+        return null;
+    }
+
+    @Override
+    public boolean getWantsAllOnMoveCalls() {
+        return false;
+    }
+
+    @Override
+    public Bundle getExtras() {
+        return null;
+    }
+
+    @Override
+    public Bundle respond(Bundle extras) {
+        return null;
+    }
+}
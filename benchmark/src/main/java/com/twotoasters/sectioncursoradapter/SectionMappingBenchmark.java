@@ -0,0 +1,128 @@
+package com.twotoasters.sectioncursoradapter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-row lookups SectionCursorAdapter makes while scrolling, for a batch of random list
+ * positions. The adapter itself needs a device, so each benchmark calls the code the adapter method it is
+ * named after runs: SectionIndex's lookups and FastScrollSections, which live in this package for that reason.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SectionMappingBenchmark {
+
+    private static final int POSITIONS = 1024;
+
+    @Param({"1000", "100000", "1000000"})
+    public int rowCount;
+
+    @Param({"1", "100", "10000"})
+    public int rowsPerSection;
+
+    private FakeCursor mCursor;
+    private SectionIndex mSectionIndex;
+    private SectionIndex mRebuiltIndex; // the same sections built again, as after notifyDataSetChanged
+    private final FastScrollSections mFastScrollSections = new FastScrollSections();
+    private boolean mRebuilt;
+    private final int[] mListPositions = new int[POSITIONS];
+
+    @Setup
+    public void setUp() {
+        mCursor = new FakeCursor(rowCount, rowsPerSection);
+        mSectionIndex = buildSectionIndex();
+        mRebuiltIndex = buildSectionIndex();
+
+        int listCount = rowCount + mSectionIndex.size();
+        Random random = new Random(42);
+        for (int i = 0; i < POSITIONS; i++) {
+            mListPositions[i] = random.nextInt(listCount);
+        }
+    }
+
+    /**
+     * Builds the sections with the row ids captured, as the adapter does when isItemIdCacheEnabled is true.
+     */
+    private SectionIndex buildSectionIndex() {
+        SectionIndex.Builder builder = new SectionIndex.Builder(true);
+        SectionKey.Scanner scanner = SectionKey.intValue(FakeCursor.SECTION).newScanner(mCursor);
+        int idColumn = mCursor.getColumnIndex("_id");
+        mCursor.moveToPosition(-1);
+        while (mCursor.moveToNext()) {
+            builder.appendRow(mCursor, scanner).appendRowId(mCursor.getLong(idColumn));
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void getIndexWithinSections(Blackhole blackhole) {
+        for (int listPosition : mListPositions) {
+            blackhole.consume(mSectionIndex.getIndexWithinSections(listPosition));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void getCursorPositionWithoutSections(Blackhole blackhole) {
+        for (int listPosition : mListPositions) {
+            blackhole.consume(mSectionIndex.getCursorPosition(listPosition));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void getItem(Blackhole blackhole) {
+        for (int listPosition : mListPositions) {
+            int sectionIndex = mSectionIndex.indexOfSection(listPosition);
+            if (sectionIndex >= 0) {
+                blackhole.consume(mSectionIndex.getSectionValue(sectionIndex));
+            } else {
+                mCursor.moveToPosition(mSectionIndex.getCursorPosition(listPosition));
+                blackhole.consume(mCursor);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POSITIONS)
+    public void getItemId(Blackhole blackhole) {
+        for (int listPosition : mListPositions) {
+            int sectionIndex = mSectionIndex.indexOfSection(listPosition);
+            if (sectionIndex >= 0) {
+                blackhole.consume(SectionIndex.getDefaultSectionId(mSectionIndex.getSectionIdValue(sectionIndex)));
+            } else {
+                blackhole.consume(mSectionIndex.getRowId(mSectionIndex.getCursorPosition(listPosition)));
+            }
+        }
+    }
+
+    /**
+     * Alternates between two indices with the same sections, as the fast scroller asks for the sections
+     * again after every notifyDataSetChanged.
+     */
+    @Benchmark
+    public Object[] getSections() {
+        mRebuilt = !mRebuilt;
+        SectionIndex index = mRebuilt ? mRebuiltIndex : mSectionIndex;
+        return mFastScrollSections.getSections(index, SectionIndex.LEVEL_SECTION, 3, false);
+    }
+}
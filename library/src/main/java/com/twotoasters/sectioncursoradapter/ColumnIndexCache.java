@@ -0,0 +1,30 @@
+package com.twotoasters.sectioncursoradapter;
+
+import android.database.Cursor;
+
+import java.util.HashMap;
+
+/**
+ * Column indices of a single cursor, looked up by name the first time they are asked for.
+ */
+final class ColumnIndexCache {
+
+    final Cursor mCursor;
+    private final HashMap<String, Integer> mIndices = new HashMap<String, Integer>();
+
+    ColumnIndexCache(Cursor cursor) {
+        mCursor = cursor;
+    }
+
+    /**
+     * @return the column's index or -1 if the column doesn't exist.
+     */
+    int getColumnIndex(String columnName) {
+        Integer index = mIndices.get(columnName);
+        if (index == null) {
+            index = mCursor.getColumnIndex(columnName);
+            mIndices.put(columnName, index);
+        }
+        return index;
+    }
+}
@@ -0,0 +1,72 @@
+package com.twotoasters.sectioncursoradapter;
+
+/**
+ * The section objects SectionCursorAdapter hands to the fast scroller. They are only made again when the
+ * section values change, not on every notifyDataSetChanged.
+ */
+final class FastScrollSections {
+
+    private Object[] mObjects;
+    private SectionIndex mIndex; // the index mObjects was last returned for
+    private int mMaxLength;
+    private int mLevel;
+    private boolean mTrimLabels;
+
+    /**
+     * @param index the sections being shown.
+     * @param level the level of the headers the fast scroller jumps between.
+     * @param maxLength the number of characters labels are trimmed to.
+     * @param trimLabels true to trim labels to maxLength, otherwise a copy of the values is returned.
+     * @return the section objects whose toString() the fast scroll dialog shows.
+     */
+    Object[] getSections(SectionIndex index, int level, int maxLength, boolean trimLabels) {
+        if (mObjects == null || maxLength != mMaxLength || level != mLevel || trimLabels != mTrimLabels
+                || (index != mIndex && !index.hasSameValues(mIndex))) {
+            Object[] values = index.getSectionValuesArray(level);
+            mObjects = trimLabels ? getTrimmedLabels(values, maxLength) : values;
+            mMaxLength = maxLength;
+            mLevel = level;
+            mTrimLabels = trimLabels;
+        }
+        mIndex = index;
+        return mObjects;
+    }
+
+    /**
+     * @return The values, with any value which isn't a String of at most max characters wrapped in a label
+     * which is only trimmed when it is shown.
+     */
+    private static Object[] getTrimmedLabels(Object[] values, int max) {
+        Object[] labels = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            boolean fits = value instanceof String && ((String) value).length() <= max;
+            labels[i] = fits ? value : new FastScrollLabel(value, max);
+        }
+        return labels;
+    }
+
+    /**
+     * A section value which is only trimmed the first time the fast scroller shows it.
+     */
+    private static final class FastScrollLabel {
+
+        private final Object mValue;
+        private final int mMaxLength;
+        private String mLabel;
+
+        FastScrollLabel(Object value, int maxLength) {
+            mValue = value;
+            mMaxLength = maxLength;
+        }
+
+        @Override
+        public String toString() {
+            if (mLabel == null) {
+                String label = String.valueOf(mValue);
+                mLabel = label.length() > mMaxLength ? label.substring(0, mMaxLength) : label;
+            }
+            return mLabel;
+        }
+    }
+}
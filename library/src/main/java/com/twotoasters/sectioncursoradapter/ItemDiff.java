@@ -0,0 +1,255 @@
+package com.twotoasters.sectioncursoradapter;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The item range notifications which turn one list of sections and rows into another.
+ *
+ * Items are matched by key, a row's _id or a section's value, and rows whose content hash differs are
+ * reported as changed. Removals are dispatched first, then inserts and moves in list order, then changes
+ * at their new positions, which is the order RecyclerView applies them in.
+ */
+final class ItemDiff {
+
+    private static final int REMOVE = 0;
+    private static final int INSERT = 1;
+    private static final int MOVE = 2;
+    private static final int CHANGE = 3;
+
+    // Positions shifted while working out moves, above which notifyDataSetChanged is cheaper.
+    private static final long MAX_COST = 1 << 24;
+
+    private int[] mOperations = new int[3 * 16];
+    private int mSize;
+
+    /**
+     * The keys and content hashes of every position in a list of sections and rows.
+     */
+    static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(new Object[0], new int[0]);
+
+        final Object[] mKeys;
+        final int[] mHashes;
+
+        Snapshot(Object[] keys, int[] hashes) {
+            mKeys = keys;
+            mHashes = hashes;
+        }
+    }
+
+    /**
+     * @return a key for a section header which never equals a row's key.
+     */
+    static Object sectionKey(Object section) {
+        return new SectionItemKey(section);
+    }
+
+    /**
+     * @return the changes from oldItems to newItems, or null if notifyDataSetChanged should be used instead
+     * because a key shows up twice or there are too many moves.
+     */
+    static ItemDiff calculate(Snapshot oldItems, Snapshot newItems) {
+        Object[] oldKeys = oldItems.mKeys;
+        Object[] newKeys = newItems.mKeys;
+        HashMap<Object, Integer> oldPositions = positionsOf(oldKeys);
+        HashMap<Object, Integer> newPositions = positionsOf(newKeys);
+        if (oldPositions == null || newPositions == null) {
+            return null;
+        }
+        ItemDiff diff = new ItemDiff();
+
+        // Removals, from the end so the positions of earlier removals don't shift.
+        int end = -1;
+        for (int i = oldKeys.length - 1; i >= 0; i--) {
+            if (!newPositions.containsKey(oldKeys[i])) {
+                if (end < 0) {
+                    end = i + 1;
+                }
+            } else if (end >= 0) {
+                diff.add(REMOVE, i + 1, end - i - 1);
+                end = -1;
+            }
+        }
+        if (end >= 0) {
+            diff.add(REMOVE, 0, end);
+        }
+        ArrayList<Object> current = new ArrayList<Object>(Math.max(oldKeys.length, newKeys.length));
+        for (Object key : oldKeys) {
+            if (newPositions.containsKey(key)) {
+                current.add(key);
+            }
+        }
+
+        // Each inserted or moved item goes right after the item before it in the new list. Items which
+        // keep their relative order are never moved and end up in place around them.
+        boolean[] unmoved = findUnmovedItems(newKeys, oldPositions);
+        long cost = 0;
+        int previous = -1; // the position in current of the item before newKeys[i]
+        for (int i = 0; i < newKeys.length; i++) {
+            Object key = newKeys[i];
+            if (!oldPositions.containsKey(key)) {
+                int count = 1;
+                while (i + count < newKeys.length && !oldPositions.containsKey(newKeys[i + count])) {
+                    count++;
+                }
+                current.addAll(previous + 1, Arrays.asList(newKeys).subList(i, i + count));
+                diff.add(INSERT, previous + 1, count);
+                previous += count;
+                i += count - 1;
+                cost += current.size();
+            } else if (unmoved[i]) {
+                do {
+                    previous++;
+                } while (!key.equals(current.get(previous)));
+            } else {
+                int from = current.indexOf(key);
+                int to = from > previous ? previous + 1 : previous;
+                current.remove(from);
+                current.add(to, key);
+                diff.add(MOVE, from, to);
+                previous = to;
+                cost += current.size() * 2L;
+            }
+            if (cost > MAX_COST) {
+                return null;
+            }
+        }
+
+        int[] oldHashes = oldItems.mHashes;
+        int[] newHashes = newItems.mHashes;
+        int start = -1;
+        for (int i = 0; i <= newKeys.length; i++) {
+            Integer oldPosition = i < newKeys.length ? oldPositions.get(newKeys[i]) : null;
+            boolean changed = oldPosition != null && oldHashes[oldPosition] != newHashes[i];
+            if (changed && start < 0) {
+                start = i;
+            } else if (!changed && start >= 0) {
+                diff.add(CHANGE, start, i - start);
+                start = -1;
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * @return true if there are no changes to dispatch.
+     */
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Notifies adapter of every change, in order.
+     */
+    void dispatchTo(RecyclerView.Adapter<?> adapter) {
+        for (int i = 0; i < mSize; i += 3) {
+            int first = mOperations[i + 1];
+            int second = mOperations[i + 2];
+            switch (mOperations[i]) {
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(first, second);
+                    break;
+                case INSERT:
+                    adapter.notifyItemRangeInserted(first, second);
+                    break;
+                case MOVE:
+                    adapter.notifyItemMoved(first, second);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(first, second);
+                    break;
+            }
+        }
+    }
+
+    private void add(int operation, int first, int second) {
+        if (mSize + 3 > mOperations.length) {
+            int[] operations = new int[mOperations.length * 2];
+            System.arraycopy(mOperations, 0, operations, 0, mSize);
+            mOperations = operations;
+        }
+        mOperations[mSize++] = operation;
+        mOperations[mSize++] = first;
+        mOperations[mSize++] = second;
+    }
+
+    /**
+     * @return the position of each key, or null if a key shows up more than once.
+     */
+    private static HashMap<Object, Integer> positionsOf(Object[] keys) {
+        HashMap<Object, Integer> positions = new HashMap<Object, Integer>(keys.length * 4 / 3 + 1);
+        for (int i = 0; i < keys.length; i++) {
+            if (positions.put(keys[i], i) != null) {
+                return null;
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Finds the longest sequence of items in the new list whose old positions are increasing. Those are the
+     * items which don't need to be moved.
+     */
+    private static boolean[] findUnmovedItems(Object[] newKeys, HashMap<Object, Integer> oldPositions) {
+        int count = newKeys.length;
+        int[] oldPosition = new int[count];
+        int[] tails = new int[count]; // the new position ending the lowest sequence of each length
+        int[] previous = new int[count];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            Integer position = oldPositions.get(newKeys[i]);
+            if (position == null) {
+                continue;
+            }
+            oldPosition[i] = position;
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (oldPosition[tails[mid]] < position) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        boolean[] unmoved = new boolean[count];
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            unmoved[i] = true;
+        }
+        return unmoved;
+    }
+
+    private static final class SectionItemKey {
+
+        private final Object mSection;
+
+        SectionItemKey(Object section) {
+            mSection = section;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SectionItemKey)) {
+                return false;
+            }
+            Object other = ((SectionItemKey) o).mSection;
+            return mSection == other || (mSection != null && mSection.equals(other));
+        }
+
+        @Override
+        public int hashCode() {
+            return mSection == null ? 0 : mSection.hashCode();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.twotoasters.sectioncursoradapter;
+
+/**
+ * Receives timings from a SectionCursorAdapter. Set one with
+ * {@link SectionCursorAdapter#setPerformanceListener(PerformanceListener)}; without one the adapter
+ * doesn't read the clock at all.
+ *
+ * @see PerformanceStats
+ */
+public interface PerformanceListener {
+
+    /**
+     * Called after sections are built, which happens on the section build executor for swapCursorAsync.
+     * A lazy build calls this once per chunk.
+     * @param rowCount the number of cursor rows the sections cover.
+     * @param sectionCount the number of sections built.
+     * @param durationNanos how long building took.
+     */
+    void onSectionsBuilt(int rowCount, int sectionCount, long durationNanos);
+
+    /**
+     * Called on the main thread at the end of every getView.
+     * @param isSection true for a section header, false for a row.
+     * @param isNewView true if the view was created by newSectionView or newItemView, false if a
+     * convertView was reused.
+     * @param mapNanos time spent mapping the list position to a section or cursor position.
+     * @param moveNanos time spent moving the cursor, which includes refilling its window. 0 for sections.
+     * @param inflateNanos time spent in newSectionView or newItemView. 0 when a convertView was reused.
+     * @param bindNanos time spent in bindSectionView or bindItemView.
+     */
+    void onViewBound(boolean isSection, boolean isNewView, long mapNanos, long moveNanos, long inflateNanos,
+            long bindNanos);
+}
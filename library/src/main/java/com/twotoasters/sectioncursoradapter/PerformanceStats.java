@@ -0,0 +1,105 @@
+package com.twotoasters.sectioncursoradapter;
+
+import java.util.Locale;
+
+/**
+ * A PerformanceListener which adds up the timings it receives, for example to log them when a screen
+ * is left:
+ * <pre>
+ * PerformanceStats stats = new PerformanceStats();
+ * adapter.setPerformanceListener(stats);
+ * ...
+ * Log.d(TAG, stats.toString());
+ * </pre>
+ */
+public class PerformanceStats implements PerformanceListener {
+
+    private int mViewCount;
+    private int mNewViewCount;
+    private long mMapNanos;
+    private long mMoveNanos;
+    private long mInflateNanos;
+    private long mBindNanos;
+    private long mSlowestViewNanos;
+
+    private int mBuildCount;
+    private long mBuildRowCount;
+    private long mBuildNanos;
+    private long mSlowestBuildNanos;
+
+    @Override
+    public synchronized void onSectionsBuilt(int rowCount, int sectionCount, long durationNanos) {
+        mBuildCount++;
+        mBuildRowCount += rowCount;
+        mBuildNanos += durationNanos;
+        mSlowestBuildNanos = Math.max(mSlowestBuildNanos, durationNanos);
+    }
+
+    @Override
+    public synchronized void onViewBound(boolean isSection, boolean isNewView, long mapNanos, long moveNanos,
+            long inflateNanos, long bindNanos) {
+        mViewCount++;
+        if (isNewView) {
+            mNewViewCount++;
+        }
+        mMapNanos += mapNanos;
+        mMoveNanos += moveNanos;
+        mInflateNanos += inflateNanos;
+        mBindNanos += bindNanos;
+        mSlowestViewNanos = Math.max(mSlowestViewNanos, mapNanos + moveNanos + inflateNanos + bindNanos);
+    }
+
+    /**
+     * @return the number of times getView was called.
+     */
+    public synchronized int getViewCount() {
+        return mViewCount;
+    }
+
+    /**
+     * @return the fraction of getView calls which reused a convertView instead of creating a new view.
+     */
+    public synchronized float getReuseRatio() {
+        return mViewCount == 0 ? 0f : (mViewCount - mNewViewCount) / (float) mViewCount;
+    }
+
+    /**
+     * @return the number of times sections were built.
+     */
+    public synchronized int getBuildCount() {
+        return mBuildCount;
+    }
+
+    /**
+     * @return the total time spent building sections.
+     */
+    public synchronized long getBuildNanos() {
+        return mBuildNanos;
+    }
+
+    /**
+     * @return the longest single getView, which is where a dropped frame is most likely.
+     */
+    public synchronized long getSlowestViewNanos() {
+        return mSlowestViewNanos;
+    }
+
+    public synchronized void reset() {
+        mViewCount = mNewViewCount = 0;
+        mMapNanos = mMoveNanos = mInflateNanos = mBindNanos = mSlowestViewNanos = 0;
+        mBuildCount = 0;
+        mBuildRowCount = mBuildNanos = mSlowestBuildNanos = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        int views = Math.max(mViewCount, 1);
+        return String.format(Locale.US, "%d views (%.0f%% reused), avg us map %.1f move %.1f bind %.1f"
+                + " inflate %.1f per new view,"
+                + " slowest %.1f ms; %d section builds of %d rows, %.1f ms total, slowest %.1f ms",
+                mViewCount, getReuseRatio() * 100,
+                mMapNanos / 1000.0 / views, mMoveNanos / 1000.0 / views, mBindNanos / 1000.0 / views,
+                mInflateNanos / 1000.0 / Math.max(mNewViewCount, 1),
+                mSlowestViewNanos / 1e6, mBuildCount, mBuildRowCount, mBuildNanos / 1e6, mSlowestBuildNanos / 1e6);
+    }
+}
@@ -0,0 +1,145 @@
+package com.twotoasters.sectioncursoradapter;
+
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.ListView;
+
+/**
+ * Pins the header of the section at the top of a list over the list, pushing it up as the next section's
+ * header scrolls into its place. The header is made with the adapter's newSectionView and bindSectionView.
+ *
+ * Put the list in a FrameLayout and set this as its scroll listener:
+ * <pre>
+ * PinnedSectionHeader pinnedHeader = new PinnedSectionHeader(adapter, frameLayout);
+ * listView.setOnScrollListener(pinnedHeader);
+ * </pre>
+ * The range of positions covered by the pinned section is kept between frames, so the sections are only
+ * looked up again when the first visible position leaves it. Headers are only pushed up from Honeycomb on.
+ * Nothing is pinned while the list's own header views, added with ListView.addHeaderView, are visible.
+ */
+public class PinnedSectionHeader implements AbsListView.OnScrollListener {
+
+    private final SectionCursorAdapter mAdapter;
+    private final ViewGroup mContainer;
+    private AbsListView.OnScrollListener mOnScrollListener;
+
+    private View mHeaderView;
+    private SectionIndex mSectionIndex; // the index mSection and its range were found in
+    private int mSection = -1; // index of the pinned section among LEVEL_SECTION headers, -1 for none
+    private int mSectionStart; // list positions [mSectionStart, mNextSectionStart) are in the pinned section
+    private int mNextSectionStart;
+
+    /**
+     * @param adapter the adapter of the list.
+     * @param container a FrameLayout or other ViewGroup over the list which the header is added to.
+     */
+    public PinnedSectionHeader(SectionCursorAdapter adapter, ViewGroup container) {
+        mAdapter = adapter;
+        mContainer = container;
+    }
+
+    /**
+     * A list only has one scroll listener, so the listener which would otherwise be set on it can be set here.
+     * @param listener the listener to pass scroll events to, or null.
+     */
+    public void setOnScrollListener(AbsListView.OnScrollListener listener) {
+        mOnScrollListener = listener;
+    }
+
+    /**
+     * @return the pinned header view, or null if no section has been pinned yet.
+     */
+    public View getHeaderView() {
+        return mHeaderView;
+    }
+
+    @Override
+    public void onScrollStateChanged(AbsListView view, int scrollState) {
+        if (mOnScrollListener != null) {
+            mOnScrollListener.onScrollStateChanged(view, scrollState);
+        }
+    }
+
+    @Override
+    public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        update(view, firstVisibleItem);
+        if (mOnScrollListener != null) {
+            mOnScrollListener.onScroll(view, firstVisibleItem, visibleItemCount, totalItemCount);
+        }
+    }
+
+    private void update(AbsListView view, int firstVisibleItem) {
+        // A ListView's own header views come before the adapter's first position.
+        int position = firstVisibleItem - (view instanceof ListView ? ((ListView) view).getHeaderViewsCount() : 0);
+        SectionIndex index = mAdapter.getSectionIndex();
+        if (position >= 0 && (index != mSectionIndex || position < mSectionStart || position >= mNextSectionStart)) {
+            findSection(index, position);
+        }
+        if (position < 0 || mSection < 0) {
+            if (mHeaderView != null) {
+                mHeaderView.setVisibility(View.GONE);
+            }
+            return;
+        }
+        mHeaderView.setVisibility(View.VISIBLE);
+
+        // Push the pinned header up while the next section's header is below it.
+        int offset = 0;
+        int nextHeaderChild = mNextSectionStart - position;
+        if (view != null && nextHeaderChild < view.getChildCount()) {
+            offset = Math.min(view.getChildAt(nextHeaderChild).getTop() - mHeaderView.getHeight(), 0);
+        }
+        ViewCompat.setTranslationY(mHeaderView, offset);
+    }
+
+    /**
+     * Finds and binds the section of the adapter position firstVisibleItem. Scrolling into the next or
+     * previous section moves by one section, anything else is a binary search.
+     */
+    private void findSection(SectionIndex index, int firstVisibleItem) {
+        int level = SectionIndex.LEVEL_SECTION;
+        int sectionCount = index.getSectionCount(level);
+        int section;
+        if (index == mSectionIndex && mSection >= 0 && firstVisibleItem >= mNextSectionStart
+                && (mSection + 2 >= sectionCount || firstVisibleItem < getSectionStart(index, mSection + 2))) {
+            section = mSection + 1;
+        } else if (index == mSectionIndex && mSection > 0 && firstVisibleItem < mSectionStart
+                && firstVisibleItem >= getSectionStart(index, mSection - 1)) {
+            section = mSection - 1;
+        } else {
+            section = index.getIndexWithinLevel(level, firstVisibleItem);
+        }
+
+        boolean isSameSection = index == mSectionIndex && section == mSection;
+        mSectionIndex = index;
+        mSection = section;
+        if (section < 0) {
+            mSectionStart = 0;
+            mNextSectionStart = sectionCount > 0 ? getSectionStart(index, 0) : Integer.MAX_VALUE;
+            return;
+        }
+        mSectionStart = getSectionStart(index, section);
+        mNextSectionStart = section + 1 < sectionCount ? getSectionStart(index, section + 1) : Integer.MAX_VALUE;
+        if (!isSameSection) {
+            bindHeader(mSectionStart, index.getSectionValue(index.getSectionIndex(level, section)));
+        }
+    }
+
+    private static int getSectionStart(SectionIndex index, int section) {
+        return index.getSectionPosition(index.getSectionIndex(SectionIndex.LEVEL_SECTION, section));
+    }
+
+    private void bindHeader(int position, Object section) {
+        if (mHeaderView == null) {
+            mHeaderView = mAdapter.newSectionView(mContainer.getContext(), section, mContainer);
+            if (mHeaderView.getLayoutParams() == null) {
+                mHeaderView.setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                        ViewGroup.LayoutParams.WRAP_CONTENT));
+            }
+            mContainer.addView(mHeaderView);
+        }
+        mAdapter.bindSectionView(mHeaderView, mContainer.getContext(), position, section);
+    }
+}
@@ -3,31 +3,95 @@ package com.twotoasters.sectioncursoradapter;
 import android.content.Context;
 import android.database.Cursor;
 import android.os.Build.VERSION;
+import android.os.Bundle;
 import android.os.Build.VERSION_CODES;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.BaseColumns;
 import android.support.v4.widget.CursorAdapter;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.SectionIndexer;
 
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.Executor;
 
 public abstract class SectionCursorAdapter extends CursorAdapter implements SectionIndexer {
 
-    public static final int NO_CURSOR_POSITION = -99; // used when mapping section list position to cursor position
+    public static final int NO_CURSOR_POSITION = SectionIndex.NO_CURSOR_POSITION; // used when mapping section list position to cursor position
 
     protected static final int VIEW_TYPE_SECTION = 0;
     protected static final int VIEW_TYPE_ITEM = 1;
+    protected static final int VIEW_TYPE_SUBSECTION = 2;
 
-    protected SortedMap<Integer, Object> mSections = new TreeMap<Integer, Object>(); // should not be null
-    ArrayList<Integer> mSectionList = new ArrayList<Integer>();
-    private Object[] mFastScrollObjects;
+    private static final String STATE_SECTIONS = "SectionCursorAdapter.sections";
+    private static final String STATE_TOKEN = "SectionCursorAdapter.token";
+    private static final String STATE_ROW_COUNT = "SectionCursorAdapter.rowCount";
+
+    private volatile SectionIndex mSectionIndex = SectionIndex.EMPTY; // should not be null
+    private final FastScrollSections mFastScrollSections = new FastScrollSections();
 
     private LayoutInflater mLayoutInflater;
 
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private Executor mSectionBuildExecutor; // null builds sections on the calling thread
+    private volatile SectionBuildTask mPendingBuild;
+    private SectionIndex mPrebuiltIndex; // used instead of building sections while swapping in an async build
+    private boolean mKeepPendingBuild;
+    private int mRowCount; // kept so the count doesn't change if the cursor is closed before a pending build is delivered
+
+    private SectionIndex mRestoredIndex; // sections from a saved state, used if the next cursor has the same token
+    private String mRestoredToken;
+    private int mRestoredRowCount;
+
+    private SectionIndex.Builder mLazyBuilder; // the sections of the rows scanned so far while building lazily
+    private SectionKey.Scanner mLazyScanner;
+    private Cursor mLazyCursor;
+    private boolean mLazyScanDone; // every row was scanned, only headers past the rows shown are left to publish
+    private int mLazyShownEnd; // the cursor position after the last row bound, plus a screen of rows
+    private final Runnable mLazyBuildStep = new Runnable() {
+        @Override
+        public void run() {
+            if (scanLazyRows(mLazyShownEnd + getSectionBuildChunkSize())) {
+                SectionCursorAdapter.super.notifyDataSetChanged();
+            }
+        }
+    };
+
+    private volatile PerformanceListener mPerformanceListener;
+
+    private LinkedHashMap<View, Integer> mSectionViews; // the section index each header view was bound for, in access order
+
+    private Boolean mHasSubsectionViewType; // null until hasSubsectionViewType is first called
+    private long mSectionViewsGeneration = -1; // the generation of the index mSectionViews was bound for
+
+    private int mLastBoundPosition = -1; // list position of the last row bound, for the scroll direction
+    private int mPrefetchStart; // cursor rows [mPrefetchStart, mPrefetchEnd) were already passed to onPrefetchCursorRange
+    private int mPrefetchEnd;
+
+    private final SectionIndex.SectionReader mSectionReader = new SectionIndex.SectionReader() {
+        @Override
+        public Object getSectionFromCursor(Cursor cursor) {
+            return SectionCursorAdapter.this.getSectionFromCursor(cursor);
+        }
+
+        @Override
+        public Object getSubsectionFromCursor(Cursor cursor) {
+            return SectionCursorAdapter.this.getSubsectionFromCursor(cursor);
+        }
+
+        @Override
+        public boolean isCancelled(Cursor cursor) {
+            return isBuildCancelled(cursor);
+        }
+    };
+
+    private volatile ColumnIndexCache mColumnIndices; // for the cursor being shown
+    private volatile ColumnIndexCache mBuildColumnIndices; // for a cursor whose sections are being built off the main thread
+
     public SectionCursorAdapter(Context context, Cursor cursor, int flags) {
         super(context, cursor, flags);
         init(context, null);
@@ -47,7 +111,7 @@ public abstract class SectionCursorAdapter extends CursorAdapter implements Sect
     private void init(Context context, SortedMap<Integer, Object> sections) {
         mLayoutInflater = LayoutInflater.from(context);
         if (sections != null) {
-            mSections = sections;
+            mSectionIndex = SectionIndex.fromSortedMap(sections);
         } else {
             buildSections();
         }
@@ -60,80 +124,694 @@ public abstract class SectionCursorAdapter extends CursorAdapter implements Sect
         return mLayoutInflater;
     }
 
+    /**
+     * The index is replaced, never changed, when sections are rebuilt, so it may be read from any thread
+     * while a rebuild is in flight. Positions in it only match the adapter's until the next rebuild.
+     * @return The index of the sections currently being shown. This is never null.
+     */
+    public SectionIndex getSectionIndex() {
+        return mSectionIndex;
+    }
+
+    /**
+     * Replaces the mSections field, which was removed when sections moved into a SectionIndex.
+     * @return A map backed by the current index whose keys are the position at which a section is and values
+     * are the section value. Changing it doesn't change the adapter's sections.
+     * @deprecated Use {@link #getSectionIndex()}, which doesn't box positions.
+     */
+    @Deprecated
+    protected SortedMap<Integer, Object> getSectionMap() {
+        return mSectionIndex.asSortedMap();
+    }
+
     /**
      * If the adapter's cursor is not null then this method will call buildSections(Cursor cursor).
+     * Otherwise the sections are cleared.
      */
     private void buildSections() {
-        if (hasOpenCursor()) {
+        stopLazyBuild();
+        mPrefetchStart = mPrefetchEnd = 0;
+        mLastBoundPosition = -1;
+        if (isWaitingForPendingBuild()) {
+            return; // the closed cursor's sections keep being shown
+        }
+        Cursor current = getCursor();
+        mRowCount = current != null && !current.isClosed() ? current.getCount() : 0;
+        if (mPrebuiltIndex != null) {
+            mSectionIndex = mPrebuiltIndex;
+        } else if (hasOpenCursor()) {
             Cursor cursor = getCursor();
-            cursor.moveToPosition(-1);
-            mSections = buildSections(cursor);
-            if (mSections == null) {
-                mSections = new TreeMap<Integer, Object>();
+            SectionIndex prebuilt = getPrebuiltSections(cursor);
+            if (prebuilt == null) {
+                prebuilt = getRestoredSections(cursor);
+            }
+            mRestoredIndex = null; // only the first cursor after restoring may use them
+            if (prebuilt != null) {
+                mSectionIndex = prebuilt;
+            } else if (getSectionBuildChunkSize() > 0 && !canAppendRows(cursor, mSectionIndex)) {
+                startLazyBuild(cursor);
+            } else {
+                mSectionIndex = buildSectionIndex(cursor, mSectionIndex);
+            }
+        } else {
+            mSectionIndex = SectionIndex.EMPTY;
+        }
+    }
+
+    /**
+     * Builds the sections for cursor. When rows are only appended, the sections built for the previous
+     * cursor are extended by scanning just the new rows.
+     */
+    private SectionIndex buildSectionIndex(Cursor cursor, SectionIndex previous) {
+        PerformanceListener listener = mPerformanceListener;
+        if (listener == null) {
+            return buildSectionIndexUntimed(cursor, previous);
+        }
+        long start = System.nanoTime();
+        SectionIndex sections = buildSectionIndexUntimed(cursor, previous);
+        listener.onSectionsBuilt(cursor.getCount(), sections.size(), System.nanoTime() - start);
+        return sections;
+    }
+
+    private SectionIndex buildSectionIndexUntimed(Cursor cursor, SectionIndex previous) {
+        if (canAppendRows(cursor, previous)) {
+            int previousRowCount = previous.getRowCount();
+            if (cursor.getCount() == previousRowCount) {
+                return previous;
             }
+            cursor.moveToPosition(previousRowCount - 1);
+            return appendSections(cursor, new SectionIndex.Builder(previous, isCursorSortedBySection()));
         }
+        cursor.moveToPosition(-1);
+        return SectionIndex.fromSortedMap(buildSections(cursor), previous);
+    }
+
+    private boolean canAppendRows(Cursor cursor, SectionIndex previous) {
+        int previousRowCount = previous.getRowCount();
+        return areRowsOnlyAppended() && previousRowCount > 0 && cursor.getCount() >= previousRowCount;
+    }
+
+    /**
+     * Scans the first chunk of the cursor now. The rest is only scanned once getView binds rows close to
+     * the end of the rows scanned so far. Rows which haven't been scanned are shown without section headers.
+     */
+    private void startLazyBuild(Cursor cursor) {
+        cursor.moveToPosition(-1);
+        mLazyCursor = cursor;
+        mLazyBuilder = new SectionIndex.Builder(isCursorSortedBySection());
+        SectionKey sectionKey = getSectionKey();
+        mLazyScanner = sectionKey != null ? sectionKey.newScanner(cursor) : null;
+        mLazyScanDone = false;
+        mLazyShownEnd = getSectionBuildChunkSize(); // so the headers of the first chunk are shown straight away
+        mSectionIndex = SectionIndex.EMPTY;
+        scanLazyRows(getSectionBuildChunkSize());
+    }
+
+    /**
+     * Called by getView while building lazily. Posts a scan of the next rows when the rows bound get
+     * within half a chunk of the rows scanned so far, or jump past them with the fast scroller.
+     */
+    private void onLazyRowBound(int cursorPosition, int visibleRowCount) {
+        mLazyShownEnd = Math.max(mLazyShownEnd, cursorPosition + 1 + visibleRowCount);
+        boolean needsRows = !mLazyScanDone
+                && mLazyShownEnd > mLazyBuilder.getRowCount() - getSectionBuildChunkSize() / 2;
+        if (needsRows || isShowingUnpublishedHeader()) {
+            mMainHandler.removeCallbacks(mLazyBuildStep);
+            mMainHandler.post(mLazyBuildStep);
+        }
+    }
+
+    /**
+     * Scans the rows of a lazy build up to rowCount, then moves the headers found into mSectionIndex if
+     * one of them is among the rows shown. Headers further down are kept back so that the list isn't
+     * notified, which would rebind every visible row, for headers nobody can see yet.
+     * @return true if headers were added to mSectionIndex, so the list has to be notified.
+     */
+    private boolean scanLazyRows(int rowCount) {
+        Cursor cursor = mLazyCursor;
+        if (cursor == null || cursor != getCursor() || cursor.isClosed()) {
+            stopLazyBuild();
+            return false;
+        }
+        int maxRows = rowCount - mLazyBuilder.getRowCount();
+        if (!mLazyScanDone && maxRows > 0) {
+            PerformanceListener listener = mPerformanceListener;
+            long start = listener != null ? System.nanoTime() : 0;
+            cursor.moveToPosition(mLazyBuilder.getRowCount() - 1); // getView moves the cursor between scans
+            mLazyScanDone = !mLazyBuilder.appendRows(cursor, mLazyScanner, mSectionReader, getItemIdColumn(cursor),
+                    maxRows);
+            if (listener != null) {
+                listener.onSectionsBuilt(mLazyBuilder.getRowCount(), mLazyBuilder.size(), System.nanoTime() - start);
+            }
+        }
+        boolean isShowingNewHeader = isShowingUnpublishedHeader();
+        boolean hasNewHeader = mLazyBuilder.size() > mSectionIndex.size();
+        if (isShowingNewHeader || (mLazyScanDone && !hasNewHeader)) {
+            mSectionIndex = mLazyBuilder.build();
+            if (mLazyScanDone) {
+                stopLazyBuild();
+            }
+        }
+        return isShowingNewHeader;
+    }
+
+    /**
+     * @return true if the first header the lazy build found which isn't in mSectionIndex yet is among the
+     * rows shown, or before them.
+     */
+    private boolean isShowingUnpublishedHeader() {
+        int published = mSectionIndex.size();
+        if (mLazyBuilder.size() <= published) {
+            return false;
+        }
+        // The header's first row is at its position less the headers before it.
+        return mLazyBuilder.getSectionPosition(published) - published < mLazyShownEnd;
+    }
+
+    private void stopLazyBuild() {
+        mMainHandler.removeCallbacks(mLazyBuildStep);
+        mLazyBuilder = null;
+        mLazyScanner = null;
+        mLazyCursor = null;
+        mLazyScanDone = false;
+    }
+
+    /**
+     * @return true while sections are still being built lazily, so they only cover the first rows.
+     */
+    protected boolean isBuildingSectionsLazily() {
+        return mLazyBuilder != null;
+    }
+    /**
+     * Sets the executor which swapCursorAsync(Cursor) builds sections on. While an executor is set,
+     * buildSections(Cursor) and getSectionFromCursor(Cursor) may be called from its threads.
+     * @param executor the executor to build sections on, or null to build them on the main thread.
+     */
+    public void setSectionBuildExecutor(Executor executor) {
+        mSectionBuildExecutor = executor;
     }
 
     /**
+     * Builds the sections for newCursor on the section build executor, then swaps in the cursor and its
+     * sections together on the main thread. Until then the current cursor and sections keep being shown,
+     * even once a loader has closed the current cursor, though its rows are not bound again.
+     * A build which is still running when this or swapCursor(Cursor) is called again is cancelled and its
+     * cursor is never swapped in.
+     *
+     * Without a section build executor, or when newCursor is null, this is the same as swapCursor(Cursor).
+     * Call this from onLoadFinished(Loader, Cursor).
+     * @param newCursor The new cursor to be used.
+     */
+    public void swapCursorAsync(Cursor newCursor) {
+        cancelPendingBuild();
+        if (mSectionBuildExecutor == null || newCursor == null || newCursor == getCursor()
+                || getPrebuiltSections(newCursor) != null || getRestoredSections(newCursor) != null) {
+            swapCursor(newCursor);
+        } else {
+            SectionBuildTask task = new SectionBuildTask(newCursor, mSectionIndex);
+            mPendingBuild = task;
+            mSectionBuildExecutor.execute(task);
+        }
+    }
+
+    /**
+     * Cancels any pending async section build before swapping in the cursor.
+     */
+    @Override
+    public Cursor swapCursor(Cursor newCursor) {
+        if (!mKeepPendingBuild) {
+            cancelPendingBuild();
+        }
+        mColumnIndices = null;
+        mLastBoundPosition = -1;
+        return super.swapCursor(newCursor);
+    }
+
+    /**
+     * Swaps in a new cursor together with sections which were already built for it, for example by a
+     * loader, so the cursor is not scanned again on the main thread.
+     * @param newCursor The new cursor to be used.
+     * @param sections The sections for newCursor, or null to build them.
+     * @return Returns the previously set Cursor, or null if there was not one.
+     */
+    public Cursor swapCursor(Cursor newCursor, SectionIndex sections) {
+        mPrebuiltIndex = sections;
+        mKeepPendingBuild = true;
+        try {
+            return swapCursor(newCursor);
+        } finally {
+            mPrebuiltIndex = null;
+            mKeepPendingBuild = false;
+        }
+    }
+
+    /**
+     * Swaps in a new cursor whose sections are read from a second, small cursor instead of scanning every row.
+     * sectionCounts should have a row for each section with the section value in its first column and the
+     * number of rows in the section in its second column, in the same order as newCursor. For example:
+     * "SELECT category, COUNT(*) FROM stores GROUP BY category ORDER BY category".
+     *
+     * If the counts don't add up to the number of rows in newCursor the sections are built by scanning it.
+     * @param newCursor The new cursor to be used.
+     * @param sectionCounts The section counts for newCursor. It is not closed by the adapter.
+     * @return Returns the previously set Cursor, or null if there was not one.
+     */
+    public Cursor swapCursorWithSectionCounts(Cursor newCursor, Cursor sectionCounts) {
+        if (newCursor == null || sectionCounts == null) {
+            return swapCursor(newCursor);
+        }
+        SectionIndex.Builder builder = new SectionIndex.Builder(true).appendSectionCounts(sectionCounts, 0, 1);
+        if (builder.getRowCount() != newCursor.getCount()) {
+            return swapCursor(newCursor);
+        }
+        // Wrapping keeps the sections with the cursor so they are reused when the data set is notified again.
+        return swapCursor(new SectionedCursor(newCursor, builder.build()));
+    }
+
+    private static SectionIndex getPrebuiltSections(Cursor cursor) {
+        return cursor instanceof SectionedCursor ? ((SectionedCursor) cursor).getSectionIndex() : null;
+    }
+
+    /**
+     * Saves the current sections with the cursor's token from getSectionIndexToken(Cursor), so they can be
+     * restored instead of scanning the cursor again after a configuration change or process death. Nothing
+     * is saved without a token, while sections are being built lazily, when a section value can't be written
+     * by Parcel.writeValue or when the sections are larger than getMaxSavedSectionsSize(); the cursor is
+     * then scanned again after restoring. Give each adapter its own Bundle if a screen has more than one.
+     * @param outState the Bundle passed to onSaveInstanceState.
+     */
+    public void onSaveInstanceState(Bundle outState) {
+        Cursor cursor = getCursor();
+        if (cursor == null || cursor.isClosed() || isBuildingSectionsLazily()) {
+            return;
+        }
+        SectionIndex index = mSectionIndex;
+        if (index.estimateParcelSize() > getMaxSavedSectionsSize() || !index.hasParcelableValues()) {
+            return;
+        }
+        String token = getSectionIndexToken(cursor);
+        if (token != null) {
+            outState.putParcelable(STATE_SECTIONS, index);
+            outState.putString(STATE_TOKEN, token);
+            outState.putInt(STATE_ROW_COUNT, cursor.getCount());
+        }
+    }
+
+    /**
+     * Keeps the sections saved by onSaveInstanceState(Bundle) for the next cursor swapped in. If that cursor
+     * has the same number of rows and the same token they are used instead of scanning it, otherwise they
+     * are dropped. Call this before the cursor is swapped in, for example from onCreate.
+     * @param savedInstanceState the Bundle passed to onCreate or onRestoreInstanceState, may be null.
+     */
+    public void onRestoreInstanceState(Bundle savedInstanceState) {
+        if (savedInstanceState == null || !savedInstanceState.containsKey(STATE_TOKEN)) {
+            return;
+        }
+        savedInstanceState.setClassLoader(SectionIndex.class.getClassLoader());
+        mRestoredIndex = savedInstanceState.getParcelable(STATE_SECTIONS);
+        mRestoredToken = savedInstanceState.getString(STATE_TOKEN);
+        mRestoredRowCount = savedInstanceState.getInt(STATE_ROW_COUNT);
+    }
+
+    /**
+     * Override this to let sections be saved and restored with onSaveInstanceState(Bundle) and
+     * onRestoreInstanceState(Bundle). The token must change whenever the cursor's sections could, for example
+     * the query and a version which is bumped whenever the table is written to.
+     * @param cursor the cursor the sections are for.
+     * @return a token identifying the cursor's data, or null to not save sections. null by default.
+     */
+    protected String getSectionIndexToken(Cursor cursor) {
+        return null;
+    }
+
+    /**
+     * Override this to change how large the sections saved by onSaveInstanceState(Bundle) may get. The
+     * saved state shares a binder transaction of about 1MB with the rest of the activity's state, and
+     * going over it throws TransactionTooLargeException.
+     * @return the largest size in bytes, as estimated from the section values and header positions, which
+     * is saved. 64KB by default.
+     */
+    protected int getMaxSavedSectionsSize() {
+        return 64 * 1024;
+    }
+
+    /**
+     * @return the restored sections if cursor matches the saved one, otherwise null.
+     */
+    private SectionIndex getRestoredSections(Cursor cursor) {
+        if (mRestoredIndex == null || cursor.getCount() != mRestoredRowCount) {
+            return null;
+        }
+        return mRestoredToken.equals(getSectionIndexToken(cursor)) ? mRestoredIndex : null;
+    }
+
+    private void cancelPendingBuild() {
+        SectionBuildTask task = mPendingBuild;
+        if (task != null) {
+            task.mCancelled = true;
+            mPendingBuild = null;
+        }
+    }
+
+    /**
+     * A loader closes the cursor it delivered before as soon as onLoadFinished returns, which is before
+     * swapCursorAsync has built the sections of the new one.
+     * @return true if the current cursor was closed while an async section build is pending. Its count and
+     * sections are then kept, and rows are not bound, until the new cursor is swapped in.
+     */
+    private boolean isWaitingForPendingBuild() {
+        Cursor cursor = getCursor();
+        return cursor != null && cursor.isClosed() && mPendingBuild != null;
+    }
+
+    /**
+     * @return true if cursor is closed, its build was cancelled or it is no longer the cursor sections are
+     * being built for.
+     */
+    private boolean isBuildCancelled(Cursor cursor) {
+        if (cursor.isClosed()) {
+            return true;
+        }
+        SectionBuildTask task = mPendingBuild;
+        if (task != null && task.mCursor == cursor) {
+            return task.mCancelled;
+        }
+        return getCursor() != cursor;
+    }
+
+    /**
+     * The default implementation builds the sections in a single pass over the cursor using
+     * {@link SectionIndex.Builder} and returns a map backed by the result. Overrides may add to or remove
+     * from the map returned by super, which then copies it into a TreeMap.
+     *
      * @param cursor a non-null cursor at position -1.
      * @return A map whose keys are the position at which a section is and values are an object
      * which will be passed to newSectionView and bindSectionView
      */
     protected SortedMap<Integer, Object> buildSections(Cursor cursor) {
-        TreeMap<Integer, Object> sections = new TreeMap<Integer, Object>();
-        int cursorPosition = 0;
-        while (hasOpenCursor() && cursor.moveToNext()) {
-            Object section = getSectionFromCursor(cursor);
-            if (cursor.getPosition() != cursorPosition)
-                throw new IllegalStateException("Do no move the cursor's position in getSectionFromCursor.");
-            if (!sections.containsValue(section))
-                sections.put(cursorPosition + sections.size(), section);
-            cursorPosition++;
+        SectionIndex.Builder builder = new SectionIndex.Builder(isCursorSortedBySection());
+        return appendSections(cursor, builder.internValues(mSectionIndex)).asSortedMap();
+    }
+
+    /**
+     * Appends every row after the cursor's current position to the builder.
+     */
+    private SectionIndex appendSections(Cursor cursor, SectionIndex.Builder builder) {
+        SectionKey sectionKey = getSectionKey();
+        SectionKey.Scanner scanner = null;
+        if (sectionKey != null) {
+            scanner = sectionKey.newScanner(cursor);
+            if (cursor.getPosition() >= 0) {
+                scanner.startsNewSection(cursor); // the last row already in the builder
+            }
         }
-        return sections;
+        builder.appendRows(cursor, scanner, mSectionReader, getItemIdColumn(cursor), Integer.MAX_VALUE);
+        return builder.build();
+    }
+
+    /**
+     * @return the _id column to capture while scanning, or -1 to not capture ids.
+     */
+    private int getItemIdColumn(Cursor cursor) {
+        return isItemIdCacheEnabled() ? cursor.getColumnIndex(BaseColumns._ID) : -1;
+    }
+
+    /**
+     * Override this and return false if rows of the same section are not next to each other in the cursor.
+     * Sorted cursors only compare each row's section against the previous row's. Unsorted cursors keep a
+     * hash set of the sections seen so far and only add a section the first time its value shows up.
+     * @return true by default.
+     */
+    protected boolean isCursorSortedBySection() {
+        return true;
+    }
+
+    /**
+     * Override this and return true if every new cursor starts with all the rows of the previous cursor,
+     * unchanged and in the same order, as when paging in more rows. Only the appended rows will then be
+     * scanned and added to the existing sections. A cursor with fewer rows is always scanned in full.
+     * @return false by default.
+     */
+    protected boolean areRowsOnlyAppended() {
+        return false;
+    }
+
+    /**
+     * Override this and return true to keep every row's _id, captured while sections are built, in a long
+     * array. getItemId then never moves the cursor, which would make a SQLiteCursor refill its window when
+     * ListView asks for ids of rows far from the visible ones. This costs 8 bytes per row, and only applies
+     * to sections built by the adapter with getSectionKey or getSectionFromCursor.
+     * @return false by default.
+     */
+    protected boolean isItemIdCacheEnabled() {
+        return false;
+    }
+
+    /**
+     * Override this to build sections lazily so the first rows can be shown without scanning the whole
+     * cursor. Only the first chunk of rows is scanned when the cursor changes. The rest are scanned on the
+     * main thread as getView binds rows close to the last row scanned, so a list which is never scrolled
+     * never scans them, and dragging the fast scroller past them scans up to the rows it shows. The data set
+     * is only notified when headers are found among or before the rows being shown. Until then the count
+     * includes the cursor's rows but only the sections shown so far.
+     *
+     * Lazy builds read sections with getSectionKey or getSectionFromCursor; buildSections(Cursor) is not called.
+     * @return the number of rows to scan at a time, or 0 to scan the whole cursor at once. 0 by default.
+     */
+    protected int getSectionBuildChunkSize() {
+        return 0;
+    }
+
+    /**
+     * Looks up a column's index once per cursor instead of once per row.
+     * Use this from getSectionFromCursor, bindItemView and the other methods which are given a cursor.
+     * @param cursor the cursor which was passed to the calling method.
+     * @param columnName the name of the target column.
+     * @return the zero-based column index for the given column name, or -1 if the column doesn't exist.
+     */
+    protected int getColumnIndex(Cursor cursor, String columnName) {
+        boolean isCurrentCursor = cursor == getCursor();
+        ColumnIndexCache columnIndices = isCurrentCursor ? mColumnIndices : mBuildColumnIndices;
+        if (columnIndices == null || columnIndices.mCursor != cursor) {
+            columnIndices = new ColumnIndexCache(cursor);
+            if (isCurrentCursor) {
+                mColumnIndices = columnIndices;
+            } else {
+                mBuildColumnIndices = columnIndices;
+            }
+        }
+        return columnIndices.getColumnIndex(columnName);
+    }
+
+    /**
+     * Override this to read each row's section straight from a column instead of implementing
+     * getSectionFromCursor. Rows are then compared without allocating and only one section object is
+     * created per section.
+     * @return the key to build sections with, or null to call getSectionFromCursor for every row.
+     */
+    protected SectionKey getSectionKey() {
+        return null;
     }
 
     /**
      * The object which is return will determine what section this cursor position will be in.
+     * This is not called when getSectionKey returns a key, so it may then just return null.
      * @param cursor
      * @return the section from the cursor at its current position.
      * This object will be passed to newSectionView and bindSectionView.
      */
     protected abstract Object getSectionFromCursor(Cursor cursor);
 
+    /**
+     * Override this to group the rows of each section into subsections, for example the cities of a country.
+     * A subsection header is added within a section whenever a row's subsection differs from the previous
+     * row's, in the same pass that builds the sections. The cursor must be sorted by subsection within each section.
+     * @param cursor
+     * @return the subsection from the cursor at its current position, or null if the row has none.
+     * This object will be passed to newSubsectionView and bindSubsectionView. null by default.
+     */
+    protected Object getSubsectionFromCursor(Cursor cursor) {
+        return null;
+    }
+
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
+        PerformanceListener listener = mPerformanceListener;
+        long start = listener != null ? System.nanoTime() : 0;
         boolean isSection = isSection(position);
         Context context = parent.getContext();
         Cursor cursor = getCursor();
         View view;
+        int newPosition = NO_CURSOR_POSITION;
+        long mapped = 0;
+        long moved = 0;
 
         if (!isSection) {
-            int newPosition = getCursorPositionWithoutSections(position);
-            if (!hasOpenCursor()) {
+            newPosition = getCursorPositionWithoutSections(position);
+            if (listener != null) {
+                mapped = System.nanoTime();
+            }
+            if (isWaitingForPendingBuild()) {
+                // Rows are bound again once the pending build swaps in the new cursor.
+                return convertView != null ? convertView : new View(context);
+            } else if (!hasOpenCursor()) {
                 // This only happens when the scroll is super fast and someone backs out.
                 return new View(parent.getContext());
-            } else if (!cursor.moveToPosition(newPosition)) {
+            } else if (!moveCursor(cursor, newPosition)) {
                 throw new IllegalStateException("couldn't move cursor to position " + newPosition);
             }
+            if (isBuildingSectionsLazily()) {
+                onLazyRowBound(newPosition, parent.getChildCount());
+            }
+        }
+        boolean isCachingSectionView = isSection && getSectionViewCacheSize() > 0;
+        if (isCachingSectionView) {
+            if (isBoundForSection(position, convertView)) {
+                if (listener != null) {
+                    listener.onViewBound(true, false, System.nanoTime() - start, 0, 0, 0);
+                }
+                return convertView;
+            }
+        }
+        if (listener != null) {
+            moved = System.nanoTime();
+            mapped = isSection ? moved : mapped;
         }
 
-        if (convertView == null) {
+        boolean isSubsection = isSection && isSubsection(position);
+        if (convertView != null) {
+            view = convertView;
+        } else if (isSubsection) {
+            view = newSubsectionView(context, getItem(position), parent);
+        } else {
             view = isSection ? newSectionView(context, getItem(position), parent)
                     : newItemView(context, cursor, parent);
-        } else {
-            view = convertView;
         }
+        long created = listener != null ? System.nanoTime() : 0;
 
-        if (isSection) {
+        if (isSubsection) {
+            bindSubsectionView(view, context, position, getItem(position));
+        } else if (isSection) {
             bindSectionView(view, context, position, getItem(position));
         } else {
             bindItemView(view, context, cursor);
+            if (getPrefetchDistance() > 0) {
+                prefetchAhead(position, newPosition);
+            }
         }
 
+        if (isCachingSectionView) {
+            mSectionViews.put(view, mSectionIndex.indexOfSection(position));
+        }
+
+        if (listener != null) {
+            listener.onViewBound(isSection, convertView == null, mapped - start, moved - mapped, created - moved,
+                    System.nanoTime() - created);
+        }
         return view;
     }
 
+    /**
+     * Override this to remember which section up to this many section and subsection views were last bound
+     * for, so a header view the list hands back as convertView for that same section, for example when the
+     * data set is notified or the header scrolls back into view, is returned without calling bindSectionView.
+     * Only convertView is ever returned, so the list keeps recycling headers as usual. What the views were
+     * bound for is forgotten whenever sections are rebuilt, so only use this when binding a header only
+     * depends on its section.
+     * @return the number of header views to remember, or 0 to bind headers every time. 0 by default.
+     */
+    protected int getSectionViewCacheSize() {
+        return 0;
+    }
+
+    /**
+     * @return true if convertView was last bound for the section at position since sections were built.
+     */
+    private boolean isBoundForSection(int position, View convertView) {
+        SectionIndex index = mSectionIndex;
+        if (mSectionViews == null) {
+            final int maxSize = getSectionViewCacheSize();
+            mSectionViews = new LinkedHashMap<View, Integer>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<View, Integer> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+        if (mSectionViewsGeneration != index.getGeneration()) {
+            mSectionViews.clear();
+            mSectionViewsGeneration = index.getGeneration();
+            return false;
+        }
+        Integer sectionIndex = convertView != null ? mSectionViews.get(convertView) : null;
+        return sectionIndex != null && sectionIndex == index.indexOfSection(position);
+    }
+
+    /**
+     * Sets a listener which is told how long getView and building sections take. Without a listener the
+     * adapter doesn't time anything.
+     * @param listener the listener to report to, or null to stop timing.
+     */
+    public void setPerformanceListener(PerformanceListener listener) {
+        mPerformanceListener = listener;
+    }
+
+    /**
+     * Override this to be told which rows are about to be shown, for example to start loading their images.
+     * It is called for the rows past the last row bound in the direction of the scroll, and for the rows
+     * after a row which is bound far from the last one, such as when the fast scroller jumps.
+     * @return how many rows to prefetch, or 0 to never call onPrefetchCursorRange. 0 by default.
+     */
+    protected int getPrefetchDistance() {
+        return 0;
+    }
+
+    /**
+     * Called with cursor rows which are likely to be bound soon. Each row is only passed once until the
+     * data set changes or the list jumps. The cursor may be moved, getView moves it back before binding.
+     * @param cursor the adapter's cursor.
+     * @param start the first cursor position to prefetch.
+     * @param end the cursor position after the last one to prefetch.
+     */
+    protected void onPrefetchCursorRange(Cursor cursor, int start, int end) {
+    }
+
+    private void prefetchAhead(int listPosition, int cursorPosition) {
+        int distance = getPrefetchDistance();
+        // After a jump the list fills in downwards from the row it jumped to.
+        boolean isJump = Math.abs(listPosition - mLastBoundPosition) > distance;
+        boolean isScrollingDown = isJump || listPosition >= mLastBoundPosition;
+        mLastBoundPosition = listPosition;
+        if (isScrollingDown) {
+            prefetch(cursorPosition + 1, cursorPosition + 1 + distance);
+        } else {
+            prefetch(cursorPosition - distance, cursorPosition);
+        }
+    }
+
+    /**
+     * Passes the part of [start, end) which wasn't prefetched yet to onPrefetchCursorRange.
+     */
+    private void prefetch(int start, int end) {
+        Cursor cursor = getCursor();
+        start = Math.max(start, 0);
+        end = Math.min(end, cursor.getCount());
+        if (start >= end || (start >= mPrefetchStart && end <= mPrefetchEnd)) {
+            return;
+        }
+        if (start >= mPrefetchStart && start <= mPrefetchEnd) {
+            start = mPrefetchEnd; // continues the rows already prefetched
+            mPrefetchEnd = end;
+        } else if (end >= mPrefetchStart && end <= mPrefetchEnd) {
+            end = mPrefetchStart;
+            mPrefetchStart = start;
+        } else {
+            mPrefetchStart = start;
+            mPrefetchEnd = end;
+        }
+        onPrefetchCursorRange(cursor, start, end);
+    }
+
     @Override
     @Deprecated
     /**
@@ -170,6 +848,28 @@ public abstract class SectionCursorAdapter extends CursorAdapter implements Sect
      */
     protected abstract void bindSectionView(View convertView, Context context, int position, Object item);
 
+    /**
+     * Creates a new subsection view. Calls newSectionView by default.
+     * @param context Interface to application's global information
+     * @param item is the subsection returned by getSubsectionFromCursor.
+     * @param parent The parent to which the new view is attached.
+     * @return
+     */
+    protected View newSubsectionView(Context context, Object item, ViewGroup parent) {
+        return newSectionView(context, item, parent);
+    }
+
+    /**
+     * Binds data to an existing subsection view. Calls bindSectionView by default.
+     * @param convertView Existing view, returned earlier by newSubsectionView
+     * @param context Interface to application's global information
+     * @param position
+     * @param item is the subsection returned by getSubsectionFromCursor.
+     */
+    protected void bindSubsectionView(View convertView, Context context, int position, Object item) {
+        bindSectionView(convertView, context, position, item);
+    }
+
     /**
      * Creates a new item view to use within a section.
      * @param cursor The cursor from which to get the data. The cursor is already moved to the correct position.
@@ -188,58 +888,80 @@ public abstract class SectionCursorAdapter extends CursorAdapter implements Sect
 
     /**
      *
-     * @param listPosition  the position of the current item in the list with mSections included
+     * @param listPosition  the position of the current item in the list with sections included
      * @return Whether or not the listPosition points to a section.
      */
     public boolean isSection(int listPosition) {
-        return mSections.containsKey(listPosition);
+        return mSectionIndex.isSection(listPosition);
+    }
+
+    /**
+     * @param listPosition the position of the current item in the list with sections included
+     * @return Whether or not the listPosition points to a subsection.
+     */
+    public boolean isSubsection(int listPosition) {
+        SectionIndex index = mSectionIndex;
+        int sectionIndex = index.indexOfSection(listPosition);
+        return sectionIndex >= 0 && index.getSectionLevel(sectionIndex) == SectionIndex.LEVEL_SUBSECTION;
     }
 
     /**
-     * This will map a position in the list adapter (which includes mSections) to a position in
-     * the cursor (which does not contain mSections).
+     * This will map a position in the list adapter (which includes sections) to a position in
+     * the cursor (which does not contain sections).
      *
-     * @param listPosition the position of the current item in the list with mSections included
+     * @param listPosition the position of the current item in the list with sections included
      * @return the correct position to use with the cursor
      */
     public int getCursorPositionWithoutSections(int listPosition) {
-        if (mSections.size() == 0) {
-            return listPosition;
-        } else if (!isSection(listPosition)) {
-            int sectionIndex = getIndexWithinSections(listPosition);
-            if (isListPositionBeforeFirstSection(listPosition, sectionIndex)) {
-                return listPosition;
-            } else {
-                return listPosition - (sectionIndex + 1);
-            }
-        } else {
-            return NO_CURSOR_POSITION;
-        }
+        return mSectionIndex.getCursorPosition(listPosition);
     }
 
     /**
      * Finds the section index for a given list position.
      *
-     * @param listPosition the position of the current item in the list with mSections included
+     * @param listPosition the position of the current item in the list with sections included
      * @return an index in an ordered list of section names
      */
     public int getIndexWithinSections(int listPosition) {
-        boolean isSection = false;
-        int numPrecedingSections = 0;
-        for (Integer sectionPosition : mSections.keySet()) {
-            if (listPosition > sectionPosition)
-                numPrecedingSections++;
-            else if (listPosition == sectionPosition)
-                isSection = true;
-            else
-                break;
+        return mSectionIndex.getIndexWithinSections(listPosition);
+    }
+
+    /**
+     * @return the number of section and subsection headers.
+     */
+    public int getSectionCount() {
+        return mSectionIndex.size();
+    }
+
+    /**
+     * Counts a section's rows in O(1) without moving the cursor. When the cursor isn't sorted by section the
+     * rows are counted while sections are built, wherever they are in the cursor.
+     * @param sectionIndex an index in the ordered list of sections, as returned by getIndexWithinSections.
+     * @return the number of rows in the section, including the rows of its subsections.
+     */
+    public int getSectionItemCount(int sectionIndex) {
+        int count = mSectionIndex.getSectionItemCount(sectionIndex);
+        if (count != SectionIndex.UNKNOWN_ROW_COUNT) {
+            return count;
         }
-        return isSection ? numPrecedingSections : Math.max(numPrecedingSections - 1, 0);
+        int[] range = getSectionCursorRange(sectionIndex);
+        return range[1] - range[0];
     }
 
-    private boolean isListPositionBeforeFirstSection(int listPosition, int sectionIndex) {
-        boolean hasSections = mSections != null && mSections.size() > 0;
-        return sectionIndex == 0 && hasSections && listPosition < mSections.firstKey();
+    /**
+     * When the cursor isn't sorted by section the range is the rows shown under the header, which may
+     * include rows of sections whose header came earlier.
+     * @param sectionIndex an index in the ordered list of sections, as returned by getIndexWithinSections.
+     * @return a new array holding the cursor position of the section's first row and the position after its
+     * last row, for example to select all of its rows.
+     */
+    public int[] getSectionCursorRange(int sectionIndex) {
+        int[] range = mSectionIndex.getSectionCursorRange(sectionIndex);
+        if (range[1] == SectionIndex.UNKNOWN_ROW_COUNT) {
+            // Sections returned by buildSections(Cursor) as a map don't know the row count.
+            range[1] = super.getCount();
+        }
+        return range;
     }
 
     /**
@@ -247,11 +969,7 @@ public abstract class SectionCursorAdapter extends CursorAdapter implements Sect
      */
     @Override
     public void notifyDataSetChanged() {
-        if (hasOpenCursor()) {
-            buildSections();
-            mFastScrollObjects = null;
-            mSectionList.clear();
-        }
+        buildSections();
         super.notifyDataSetChanged();
     }
 
@@ -260,52 +978,76 @@ public abstract class SectionCursorAdapter extends CursorAdapter implements Sect
      */
     @Override
     public void notifyDataSetInvalidated() {
-        if (hasOpenCursor()) {
-            buildSections();
-            mFastScrollObjects = null;
-            mSectionList.clear();
-        }
+        buildSections();
         super.notifyDataSetInvalidated();
     }
 
     /**
-     * @param listPosition the position of the current item in the list with mSections included
+     * @param listPosition the position of the current item in the list with sections included
      * @return If the position is a section it will return the value for the position from the section map.
      * Otherwise it will convert to the cursor position and return super.
      */
     @Override
     public Object getItem(int listPosition) {
-        if (isSection(listPosition))
-            return mSections.get(listPosition);
+        int sectionIndex = mSectionIndex.indexOfSection(listPosition);
+        if (sectionIndex >= 0)
+            return mSectionIndex.getSectionValue(sectionIndex);
+        else if (isWaitingForPendingBuild())
+            return null;
         else
             return super.getItem(getCursorPositionWithoutSections(listPosition));
     }
 
     /**
-     * @param listPosition the position of the current item in the list with mSections included
-     * @return If the position is a section it will return the value for the position from the section map.
-     * Otherwise it will return the _id column value.
+     * @param listPosition the position of the current item in the list with sections included
+     * @return getSectionId for a section, otherwise the row's _id column value.
      */
     @Override
     public long getItemId(int listPosition) {
-        if (isSection(listPosition))
-            return listPosition;
-        else {
+        SectionIndex index = mSectionIndex;
+        int sectionIndex = index.indexOfSection(listPosition);
+        if (sectionIndex >= 0) {
+            return getSectionId(index.getSectionIdValue(sectionIndex));
+        } else {
             int cursorPosition = getCursorPositionWithoutSections(listPosition);
+            if (cursorPosition >= 0 && cursorPosition < index.getRowIdCount()) {
+                return index.getRowId(cursorPosition);
+            }
             Cursor cursor = getCursor();
-            if (hasOpenCursor() && cursor.moveToPosition(cursorPosition)) {
-                return cursor.getLong(cursor.getColumnIndex("_id"));
+            if (hasOpenCursor() && moveCursor(cursor, cursorPosition)) {
+                return cursor.getLong(getColumnIndex(cursor, BaseColumns._ID));
             }
             return NO_CURSOR_POSITION;
         }
     }
 
+    /**
+     * Override this if section values' hash codes are not stable or could collide with row ids.
+     * @param section the section's value. For a subsection, a list of its section's value and its own value.
+     * @return a stable id for the section. By default a negative id derived from the section's hash code.
+     */
+    protected long getSectionId(Object section) {
+        return SectionIndex.getDefaultSectionId(section);
+    }
+
+    /**
+     * @return True unless the cursor has no _id column. The _id column's index is only looked up once per cursor.
+     */
+    @Override
+    public boolean hasStableIds() {
+        Cursor cursor = getCursor();
+        return cursor == null || cursor.isClosed() || getColumnIndex(cursor, BaseColumns._ID) >= 0;
+    }
+
     /**
      * @return How many items are in the data set represented by this Adapter.
      */
     @Override
     public int getCount() {
-        return super.getCount() + mSections.size();
+        if (isWaitingForPendingBuild()) {
+            return mRowCount + mSectionIndex.size();
+        }
+        return super.getCount() + mSectionIndex.size();
     }
 
     /**
@@ -314,25 +1056,69 @@ public abstract class SectionCursorAdapter extends CursorAdapter implements Sect
      */
     @Override
     public int getItemViewType(int listPosition) {
-        return isSection(listPosition) ? VIEW_TYPE_SECTION : VIEW_TYPE_ITEM;
+        if (!isSection(listPosition)) {
+            return VIEW_TYPE_ITEM;
+        }
+        return isSubsection(listPosition) && hasSubsectionViewType() ? VIEW_TYPE_SUBSECTION : VIEW_TYPE_SECTION;
     }
 
     /**
      * @return Returns the number of types of Views that will be created by getView(int, View, ViewGroup).
+     * VIEW_TYPE_SUBSECTION is only counted when subsections are used, see hasSubsectionViewType.
      */
     @Override
     public int getViewTypeCount() {
-        return 2;
+        return hasSubsectionViewType() ? 3 : 2;
+    }
+
+    /**
+     * Subsection headers only get their own view type when a subclass overrides getSubsectionFromCursor,
+     * newSubsectionView or bindSubsectionView. Otherwise any subsections, for example from a loader's
+     * index, are made by the section methods and share VIEW_TYPE_SECTION, so subclasses which already
+     * use view type 2 keep working. This can't change once the adapter is set on a list.
+     */
+    private boolean hasSubsectionViewType() {
+        if (mHasSubsectionViewType == null) {
+            mHasSubsectionViewType = overrides("getSubsectionFromCursor", Cursor.class)
+                    || overrides("newSubsectionView", Context.class, Object.class, ViewGroup.class)
+                    || overrides("bindSubsectionView", View.class, Context.class, int.class, Object.class);
+        }
+        return mHasSubsectionViewType;
+    }
+
+    /**
+     * @return true if a subclass declares a method with this name and these parameter types.
+     */
+    private boolean overrides(String name, Class<?>... parameterTypes) {
+        for (Class<?> c = getClass(); c != SectionCursorAdapter.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(name, parameterTypes);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // look in the superclass
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves the cursor unless it is already at position, which some cursors don't check for themselves.
+     */
+    private static boolean moveCursor(Cursor cursor, int position) {
+        return cursor.getPosition() == position || cursor.moveToPosition(position);
     }
 
     /**
      * @return True if cursor is not null and open.
-     * If the cursor is closed a null cursor will be swapped out.
+     * If the cursor is closed a null cursor will be swapped out, unless an async section build for the
+     * cursor which will replace it is pending.
      */
     protected boolean hasOpenCursor() {
         Cursor cursor = getCursor();
         if (cursor == null || cursor.isClosed()) {
-            swapCursor(null);
+            if (!isWaitingForPendingBuild()) {
+                swapCursor(null);
+            }
             return false;
         }
         return true;
@@ -356,12 +1142,13 @@ public abstract class SectionCursorAdapter extends CursorAdapter implements Sect
      */
     @Override
     public int getPositionForSection(int sectionIndex) {
-        if (mSectionList.size() == 0) {
-            for (Integer key : mSections.keySet()) {
-                mSectionList.add(key);
-            }
+        int level = getFastScrollSectionLevel();
+        SectionIndex index = mSectionIndex;
+        if (sectionIndex >= index.getSectionCount(level)) {
+            return getCount();
         }
-        return sectionIndex < mSectionList.size() ? mSectionList.get(sectionIndex) : getCount();
+        int headerIndex = index.getSectionIndex(level, sectionIndex);
+        return index.getSectionPosition(headerIndex);
     }
 
     /**
@@ -383,13 +1170,13 @@ public abstract class SectionCursorAdapter extends CursorAdapter implements Sect
     @Override
     public int getSectionForPosition(int position) {
         Object[] objects = getSections(); // the fast scroll section objects
-        int sectionIndex = getIndexWithinSections(position);
+        int sectionIndex = mSectionIndex.getIndexWithinLevel(getFastScrollSectionLevel(), position);
 
-        return sectionIndex < objects.length ? sectionIndex : 0;
+        return sectionIndex >= 0 && sectionIndex < objects.length ? sectionIndex : 0;
     }
 
     /**
-     * Returns an array of objects representing mSections of the list. The
+     * Returns an array of objects representing sections of the list. The
      * returned array and its contents should be non-null.
      *
      * The list view will call toString() on the objects to get the preview text
@@ -401,10 +1188,10 @@ public abstract class SectionCursorAdapter extends CursorAdapter implements Sect
      */
     @Override
     public Object[] getSections() {
-        if (mFastScrollObjects == null) {
-            mFastScrollObjects = getFastScrollDialogLabels();
-        }
-        return mFastScrollObjects;
+        // As only a max of three letters can fit in the fast scroll dialog before KitKat, labels are trimmed
+        // to getMaxIndexerLength() there.
+        return mFastScrollSections.getSections(mSectionIndex, getFastScrollSectionLevel(), getMaxIndexerLength(),
+                VERSION.SDK_INT < VERSION_CODES.KITKAT);
     }
 
     /**
@@ -416,21 +1203,57 @@ public abstract class SectionCursorAdapter extends CursorAdapter implements Sect
     }
 
     /**
-     * @return The values which for the sections which will be shown in the fast scroll dialog.
-     * As the only a max of three letters can fit in this dialog before KitKat,
-     * the string value will be trimmed according to to length specified in getMaxIndexerLength().
+     * Override this to have the fast scroller jump between subsections instead of sections.
+     * @return {@link SectionIndex#LEVEL_SECTION} by default, or {@link SectionIndex#LEVEL_SUBSECTION}.
      */
-    private Object[] getFastScrollDialogLabels() {
-        Collection<Object> sectionsCollection = mSections.values();
-        Object[] objects = sectionsCollection.toArray(new Object[sectionsCollection.size()]);
-        if (VERSION.SDK_INT < VERSION_CODES.KITKAT) {
-            int max = getMaxIndexerLength();
-            for (int i = 0; i < objects.length; i++) {
-                if (objects[i].toString().length() >= max) {
-                    objects[i] = objects[i].toString().substring(0, max);
+    protected int getFastScrollSectionLevel() {
+        return SectionIndex.LEVEL_SECTION;
+    }
+
+    /**
+     * Builds the sections for a cursor off the main thread and posts the result back to swap it in.
+     */
+    private final class SectionBuildTask implements Runnable {
+
+        final Cursor mCursor;
+        final SectionIndex mPreviousSections;
+        volatile boolean mCancelled;
+
+        SectionBuildTask(Cursor cursor, SectionIndex previousSections) {
+            mCursor = cursor;
+            mPreviousSections = previousSections;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            SectionIndex built;
+            try {
+                built = mCursor.isClosed() ? null : buildSectionIndex(mCursor, mPreviousSections);
+            } catch (RuntimeException e) {
+                // A loader may close the cursor between the checks and a read, which then throws.
+                if (!mCancelled && !mCursor.isClosed()) {
+                    throw e;
                 }
+                built = null;
             }
+            final SectionIndex sections = built;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mCancelled || mPendingBuild != SectionBuildTask.this) {
+                        return;
+                    }
+                    mPendingBuild = null;
+                    if (!mCursor.isClosed()) {
+                        swapCursor(mCursor, sections);
+                    } else if (getCursor() != null && getCursor().isClosed()) {
+                        swapCursor(null); // nothing is left to show
+                    }
+                }
+            });
         }
-        return objects;
     }
 }
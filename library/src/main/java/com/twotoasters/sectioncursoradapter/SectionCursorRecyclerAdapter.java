@@ -0,0 +1,517 @@
+package com.twotoasters.sectioncursoradapter;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.BaseColumns;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.ViewGroup;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A RecyclerView adapter which shows a cursor's rows under section headers. Sections are built with
+ * the same {@link SectionIndex} as {@link SectionCursorAdapter} and are shown with their own view type.
+ *
+ * The adapter does not observe the cursor. Swap in a new cursor, for example from a loader, whenever
+ * the data changes. getItemId returns the _id column for rows, so setHasStableIds(true) may be called
+ * when the cursor has one.
+ *
+ * swapCursorAsync builds the new cursor's sections on the section build executor. When isItemDiffEnabled
+ * returns true it also compares the rows by _id and getItemContentHash, and the sections by value, with
+ * the current ones and only notifies the items which were inserted, removed, moved or changed.
+ *
+ * @param <SH> the view holder for section headers.
+ * @param <IH> the view holder for rows.
+ */
+public abstract class SectionCursorRecyclerAdapter<SH extends RecyclerView.ViewHolder, IH extends RecyclerView.ViewHolder>
+        extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+    public static final int NO_CURSOR_POSITION = SectionIndex.NO_CURSOR_POSITION;
+
+    protected static final int VIEW_TYPE_SECTION = 0;
+    protected static final int VIEW_TYPE_ITEM = 1;
+
+    private final Context mContext;
+    private final LayoutInflater mLayoutInflater;
+
+    private Cursor mCursor;
+    private int mRowCount; // kept so the item count doesn't change if the cursor is closed before a swap
+    private volatile SectionIndex mSectionIndex = SectionIndex.EMPTY; // should not be null
+    private ItemDiff.Snapshot mItems; // the keys of the items being shown, null if they weren't read
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private Executor mSectionBuildExecutor; // null builds sections on the calling thread
+    private volatile SwapTask mPendingSwap;
+    private boolean mSkippedBind; // an item was laid out while a pending swap's previous cursor was closed
+
+    private final SectionIndex.SectionReader mSectionReader = new SectionIndex.SectionReader() {
+        @Override
+        public Object getSectionFromCursor(Cursor cursor) {
+            return SectionCursorRecyclerAdapter.this.getSectionFromCursor(cursor);
+        }
+
+        @Override
+        public Object getSubsectionFromCursor(Cursor cursor) {
+            return null; // headers only have one view type
+        }
+
+        @Override
+        public boolean isCancelled(Cursor cursor) {
+            if (cursor.isClosed()) {
+                return true;
+            }
+            SwapTask task = mPendingSwap;
+            return task != null && task.mCursor == cursor && task.mCancelled;
+        }
+    };
+
+    private volatile ColumnIndexCache mColumnIndices; // for the cursor being shown
+    private volatile ColumnIndexCache mBuildColumnIndices; // for a cursor being read off the main thread
+
+    public SectionCursorRecyclerAdapter(Context context, Cursor cursor) {
+        mContext = context;
+        mLayoutInflater = LayoutInflater.from(context);
+        replaceCursor(cursor, null, null);
+    }
+
+    /**
+     * @return the context the adapter was created with.
+     */
+    protected Context getContext() {
+        return mContext;
+    }
+
+    /**
+     * @return an inflater to inflate your view with.
+     */
+    protected LayoutInflater getLayoutInflater() {
+        return mLayoutInflater;
+    }
+
+    /**
+     * @return The cursor being shown, or null if there is none.
+     */
+    public Cursor getCursor() {
+        return mCursor;
+    }
+
+    /**
+     * The index is replaced, never changed, when sections are rebuilt, so it may be read from any thread.
+     * @return The index of the sections currently being shown. This is never null.
+     */
+    public SectionIndex getSectionIndex() {
+        return mSectionIndex;
+    }
+
+    /**
+     * Changes the cursor and closes the previous one.
+     * @param cursor The new cursor to be used.
+     */
+    public void changeCursor(Cursor cursor) {
+        Cursor old = swapCursor(cursor);
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    /**
+     * Swaps in a new cursor, builds its sections and notifies the data set changed.
+     * The previous cursor is not closed.
+     * @param newCursor The new cursor to be used.
+     * @return Returns the previously set Cursor, or null if there was not one.
+     */
+    public Cursor swapCursor(Cursor newCursor) {
+        return swapCursor(newCursor, null);
+    }
+
+    /**
+     * Swaps in a new cursor together with sections which were already built for it, for example by a
+     * loader, so the cursor is not scanned again on the main thread.
+     * @param newCursor The new cursor to be used.
+     * @param sections The sections for newCursor, or null to build them.
+     * @return Returns the previously set Cursor, or null if there was not one.
+     */
+    public Cursor swapCursor(Cursor newCursor, SectionIndex sections) {
+        cancelPendingSwap();
+        if (newCursor == mCursor && sections == null) {
+            return null;
+        }
+        Cursor old = replaceCursor(newCursor, sections, null);
+        notifyDataSetChanged();
+        return old;
+    }
+
+    /**
+     * Sets the executor which swapCursorAsync(Cursor) builds sections and diffs items on. While an
+     * executor is set, buildSectionIndex, getSectionFromCursor and getItemContentHash may be called from
+     * its threads.
+     * @param executor the executor to build sections on, or null to build them on the calling thread.
+     */
+    public void setSectionBuildExecutor(Executor executor) {
+        mSectionBuildExecutor = executor;
+    }
+
+    /**
+     * Builds the sections for newCursor on the section build executor, then swaps in the cursor and its
+     * sections together on the main thread. A swap which is still pending when this or swapCursor is called
+     * again is cancelled. The previous cursor is not closed.
+     *
+     * When isItemDiffEnabled returns true only the items which changed are notified. Otherwise, or if the
+     * current items weren't read because their cursor was swapped in with swapCursor, the whole data set is.
+     * @param newCursor The new cursor to be used.
+     */
+    public void swapCursorAsync(Cursor newCursor) {
+        cancelPendingSwap();
+        if (newCursor == null || newCursor == mCursor) {
+            swapCursor(newCursor);
+            return;
+        }
+        SwapTask task = new SwapTask(newCursor, isItemDiffEnabled() ? mItems : null);
+        mPendingSwap = task;
+        if (mSectionBuildExecutor == null) {
+            task.prepare();
+            task.deliver();
+        } else {
+            mSectionBuildExecutor.execute(task);
+        }
+    }
+
+    /**
+     * Override this and return true to have swapCursorAsync notify only the items which changed.
+     * Rows are matched by their _id column and compared with getItemContentHash.
+     * @return false by default.
+     */
+    protected boolean isItemDiffEnabled() {
+        return false;
+    }
+
+    /**
+     * A row whose _id is in both cursors is notified as changed when its hash is different.
+     * This is called for every row of a new cursor, off the main thread when an executor is set.
+     * @param cursor The cursor from which to get the data. The cursor is already moved to the correct position.
+     * @return a hash of every column which is shown by onBindItemViewHolder. 0 by default, so rows which
+     * stay are only notified when they move.
+     */
+    protected int getItemContentHash(Cursor cursor) {
+        return 0;
+    }
+
+    private Cursor replaceCursor(Cursor newCursor, SectionIndex sections, ItemDiff.Snapshot items) {
+        Cursor old = mCursor;
+        mCursor = newCursor;
+        mColumnIndices = null;
+        mRowCount = hasOpenCursor() ? newCursor.getCount() : 0;
+        mSectionIndex = sections != null ? sections : buildSections(newCursor);
+        mItems = newCursor == null ? ItemDiff.Snapshot.EMPTY : items;
+        mSkippedBind = false;
+        return old;
+    }
+
+    private void cancelPendingSwap() {
+        SwapTask task = mPendingSwap;
+        if (task != null) {
+            task.mCancelled = true;
+            mPendingSwap = null;
+        }
+    }
+
+    /**
+     * Reads the key and content hash of every section and row, or returns null if the cursor has no _id.
+     */
+    private ItemDiff.Snapshot readItems(Cursor cursor, SectionIndex sections) {
+        int idColumn = cursor.getColumnIndex(BaseColumns._ID);
+        if (idColumn < 0) {
+            return null;
+        }
+        int sectionCount = sections.size();
+        Object[] keys = new Object[cursor.getCount() + sectionCount];
+        int[] hashes = new int[keys.length];
+        int section = 0;
+        int position = 0;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            if (section < sectionCount && sections.getSectionPosition(section) == position) {
+                Object value = sections.getSectionValue(section++);
+                keys[position++] = ItemDiff.sectionKey(value);
+            }
+            keys[position] = cursor.getLong(idColumn);
+            hashes[position++] = getItemContentHash(cursor);
+        }
+        return position == keys.length ? new ItemDiff.Snapshot(keys, hashes) : null;
+    }
+
+    private SectionIndex buildSections(Cursor cursor) {
+        if (cursor == null || cursor.isClosed()) {
+            return SectionIndex.EMPTY;
+        }
+        if (cursor instanceof SectionedCursor) {
+            SectionIndex prebuilt = ((SectionedCursor) cursor).getSectionIndex();
+            if (prebuilt != null) {
+                return prebuilt;
+            }
+        }
+        cursor.moveToPosition(-1);
+        return buildSectionIndex(cursor);
+    }
+
+    /**
+     * Builds the sections for a cursor in a single pass using getSectionKey or getSectionFromCursor.
+     * @param cursor a non-null cursor at position -1.
+     * @return the sections for cursor.
+     */
+    protected SectionIndex buildSectionIndex(Cursor cursor) {
+        SectionIndex.Builder builder = new SectionIndex.Builder(isCursorSortedBySection());
+        SectionKey sectionKey = getSectionKey();
+        SectionKey.Scanner scanner = sectionKey != null ? sectionKey.newScanner(cursor) : null;
+        builder.appendRows(cursor, scanner, mSectionReader, -1, Integer.MAX_VALUE);
+        return builder.build();
+    }
+
+    /**
+     * Override this and return false if rows of the same section are not next to each other in the cursor.
+     * @return true by default.
+     */
+    protected boolean isCursorSortedBySection() {
+        return true;
+    }
+
+    /**
+     * Override this to read each row's section straight from a column instead of implementing
+     * getSectionFromCursor.
+     * @return the key to build sections with, or null to call getSectionFromCursor for every row.
+     */
+    protected SectionKey getSectionKey() {
+        return null;
+    }
+
+    /**
+     * The object which is returned will determine what section this cursor position will be in.
+     * This is not called when getSectionKey returns a key, so it may then just return null.
+     * @param cursor
+     * @return the section from the cursor at its current position.
+     * This object will be passed to onBindSectionViewHolder.
+     */
+    protected abstract Object getSectionFromCursor(Cursor cursor);
+
+    /**
+     * Looks up a column's index once per cursor instead of once per row.
+     * @param cursor the cursor which was passed to the calling method.
+     * @param columnName the name of the target column.
+     * @return the zero-based column index for the given column name, or -1 if the column doesn't exist.
+     */
+    protected int getColumnIndex(Cursor cursor, String columnName) {
+        boolean isCurrentCursor = cursor == mCursor;
+        ColumnIndexCache columnIndices = isCurrentCursor ? mColumnIndices : mBuildColumnIndices;
+        if (columnIndices == null || columnIndices.mCursor != cursor) {
+            columnIndices = new ColumnIndexCache(cursor);
+            if (isCurrentCursor) {
+                mColumnIndices = columnIndices;
+            } else {
+                mBuildColumnIndices = columnIndices;
+            }
+        }
+        return columnIndices.getColumnIndex(columnName);
+    }
+
+    @Override
+    public final RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        return viewType == VIEW_TYPE_SECTION ? onCreateSectionViewHolder(parent) : onCreateItemViewHolder(parent);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public final void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        int sectionIndex = mSectionIndex.indexOfSection(position);
+        if (sectionIndex >= 0) {
+            onBindSectionViewHolder((SH) holder, position, mSectionIndex.getSectionValue(sectionIndex));
+            return;
+        }
+        int cursorPosition = getCursorPositionWithoutSections(position);
+        if (!hasOpenCursor() && mPendingSwap != null) {
+            // A loader closed the cursor before the swap was delivered. Everything is rebound once it is.
+            mSkippedBind = true;
+            return;
+        } else if (!hasOpenCursor()) {
+            throw new IllegalStateException("this should only be called when the cursor is valid");
+        } else if (!mCursor.moveToPosition(cursorPosition)) {
+            throw new IllegalStateException("couldn't move cursor to position " + cursorPosition);
+        }
+        onBindItemViewHolder((IH) holder, mCursor);
+    }
+
+    /**
+     * Creates a new section view holder.
+     * @param parent The parent to which the new view will be attached.
+     */
+    protected abstract SH onCreateSectionViewHolder(ViewGroup parent);
+
+    /**
+     * Binds a section to a view holder.
+     * @param holder Existing view holder, returned earlier by onCreateSectionViewHolder
+     * @param position the position of the section in the adapter.
+     * @param section is the section value returned by getSectionFromCursor or the section key.
+     */
+    protected abstract void onBindSectionViewHolder(SH holder, int position, Object section);
+
+    /**
+     * Creates a new item view holder to use within a section.
+     * @param parent The parent to which the new view will be attached.
+     */
+    protected abstract IH onCreateItemViewHolder(ViewGroup parent);
+
+    /**
+     * Binds a row to a view holder.
+     * @param holder Existing view holder, returned earlier by onCreateItemViewHolder
+     * @param cursor The cursor from which to get the data. The cursor is already moved to the correct position.
+     */
+    protected abstract void onBindItemViewHolder(IH holder, Cursor cursor);
+
+    /**
+     * @return How many sections and rows are in the adapter.
+     */
+    @Override
+    public int getItemCount() {
+        return mCursor != null ? mRowCount + mSectionIndex.size() : 0;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return isSection(position) ? VIEW_TYPE_SECTION : VIEW_TYPE_ITEM;
+    }
+
+    /**
+     * @param position the position of the current item in the list with sections included
+     * @return getSectionId for a section, otherwise the row's _id column value.
+     */
+    @Override
+    public long getItemId(int position) {
+        int sectionIndex = mSectionIndex.indexOfSection(position);
+        if (sectionIndex >= 0) {
+            return getSectionId(mSectionIndex.getSectionValue(sectionIndex));
+        }
+        int cursorPosition = getCursorPositionWithoutSections(position);
+        if (cursorPosition >= 0 && cursorPosition < mSectionIndex.getRowIdCount()) {
+            return mSectionIndex.getRowId(cursorPosition); // captured by a SectionedCursorLoader
+        }
+        if (hasOpenCursor() && mCursor.moveToPosition(cursorPosition)) {
+            return mCursor.getLong(getColumnIndex(mCursor, BaseColumns._ID));
+        }
+        return RecyclerView.NO_ID;
+    }
+
+    /**
+     * Override this if section values' hash codes are not stable or could collide with row ids.
+     * @param section the section's value.
+     * @return a stable id for the section. By default a negative id derived from the section's hash code.
+     */
+    protected long getSectionId(Object section) {
+        return SectionIndex.getDefaultSectionId(section);
+    }
+
+    /**
+     * @param listPosition the position of the current item in the list with sections included
+     * @return Whether or not the listPosition points to a section.
+     */
+    public boolean isSection(int listPosition) {
+        return mSectionIndex.isSection(listPosition);
+    }
+
+    /**
+     * @param listPosition the position of the current item in the list with sections included
+     * @return the correct position to use with the cursor
+     */
+    public int getCursorPositionWithoutSections(int listPosition) {
+        return mSectionIndex.getCursorPosition(listPosition);
+    }
+
+    /**
+     * @param listPosition the position of the current item in the list with sections included
+     * @return an index in an ordered list of section names
+     */
+    public int getIndexWithinSections(int listPosition) {
+        return mSectionIndex.getIndexWithinSections(listPosition);
+    }
+
+    /**
+     * @param sectionIndex the index of the section
+     * @return the position of the section's header in the adapter.
+     */
+    public int getPositionForSection(int sectionIndex) {
+        SectionIndex index = mSectionIndex;
+        return sectionIndex < index.size() ? index.getSectionPosition(sectionIndex) : getItemCount();
+    }
+
+    /**
+     * @return True if cursor is not null and open.
+     */
+    protected boolean hasOpenCursor() {
+        return mCursor != null && !mCursor.isClosed();
+    }
+
+    /**
+     * Builds the sections for a cursor, and diffs its items against the current ones, off the main thread
+     * and posts the result back to swap it in.
+     */
+    private final class SwapTask implements Runnable {
+
+        final Cursor mCursor;
+        final ItemDiff.Snapshot mPreviousItems;
+        volatile boolean mCancelled;
+
+        SectionIndex mSections;
+        ItemDiff.Snapshot mItems;
+        ItemDiff mDiff;
+
+        SwapTask(Cursor cursor, ItemDiff.Snapshot previousItems) {
+            mCursor = cursor;
+            mPreviousItems = previousItems;
+        }
+
+        void prepare() {
+            mSections = buildSections(mCursor);
+            if (mPreviousItems != null && !mCancelled) {
+                mItems = readItems(mCursor, mSections);
+                mDiff = mItems != null ? ItemDiff.calculate(mPreviousItems, mItems) : null;
+            }
+        }
+
+        void deliver() {
+            if (mCancelled || mPendingSwap != this || mCursor.isClosed()) {
+                return;
+            }
+            mPendingSwap = null;
+            boolean skippedBind = mSkippedBind;
+            replaceCursor(mCursor, mSections, mItems);
+            if (mDiff != null && !skippedBind) {
+                mDiff.dispatchTo(SectionCursorRecyclerAdapter.this);
+            } else {
+                notifyDataSetChanged();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled || mCursor.isClosed()) {
+                return;
+            }
+            try {
+                prepare();
+            } catch (RuntimeException e) {
+                // A loader may close the cursor between the checks and a read, which then throws.
+                if (!mCancelled && !mCursor.isClosed()) {
+                    throw e;
+                }
+                return;
+            }
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,1270 @@
+package com.twotoasters.sectioncursoradapter;
+
+import android.database.Cursor;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable index of where the sections are within a SectionCursorAdapter.
+ *
+ * The list positions of the section headers are kept in a sorted int array with a parallel array
+ * of section values, so looking up a position never boxes an Integer or walks a tree.
+ *
+ * Sections may have subsections, for example countries with a header for each of their cities. Both
+ * levels of headers share the same arrays, so mapping a position costs the same as without subsections.
+ *
+ * An index never changes once it is built, so it can be read from any thread without locking. The
+ * adapters replace their index with a new one, which has a higher generation, whenever sections are rebuilt.
+ *
+ * An index can be written to a Parcel, for example to keep it in a saved instance state, when its section
+ * values are Strings, boxed primitives or other values Parcel.writeValue supports.
+ */
+public final class SectionIndex implements Parcelable {
+
+    public static final int NO_CURSOR_POSITION = -99; // used when mapping section list position to cursor position
+    public static final int UNKNOWN_ROW_COUNT = -1;
+    public static final int LEVEL_SECTION = 0;
+    public static final int LEVEL_SUBSECTION = 1;
+
+    private static final AtomicLong sGenerations = new AtomicLong();
+
+    public static final SectionIndex EMPTY = new SectionIndex(new int[0], new Object[0], UNKNOWN_ROW_COUNT);
+
+    public static final Parcelable.Creator<SectionIndex> CREATOR = new Parcelable.Creator<SectionIndex>() {
+        @Override
+        public SectionIndex createFromParcel(Parcel source) {
+            int[] positions = source.createIntArray();
+            Object[] values = source.readArray(SectionIndex.class.getClassLoader());
+            int rowCount = source.readInt();
+            byte[] levels = source.createByteArray();
+            int[] itemCounts = source.createIntArray();
+            return new SectionIndex(positions, values, rowCount, null, levels, itemCounts);
+        }
+
+        @Override
+        public SectionIndex[] newArray(int size) {
+            return new SectionIndex[size];
+        }
+    };
+
+    // Sizes used by estimateRetainedSize, as laid out by Dalvik and ART with 4 byte references.
+    private static final int OBJECT_HEADER_BYTES = 8;
+    private static final int ARRAY_HEADER_BYTES = 12;
+    private static final int REFERENCE_BYTES = 4;
+
+    private final int[] mPositions; // list positions of the section headers in ascending order
+    private final Object[] mValues; // the section value for each header in mPositions
+    private final int mRowCount; // number of cursor rows the sections were built for
+    private final long[] mRowIds; // the _id of each row, may be longer than mRowCount, or null
+    private final byte[] mLevels; // the level of each header in mPositions, null when there are no subsections
+    private final int[] mSectionIndices; // indices of the LEVEL_SECTION headers, null when there are no subsections
+    private final int[] mSubsectionIndices; // indices of the LEVEL_SUBSECTION headers, null when there are no subsections
+    private final int[] mSectionEnds; // index of the header after each header's rows, null when there are no subsections
+    private final int[] mItemCounts; // rows of each header's section when the cursor isn't sorted, otherwise null
+    private final long mGeneration;
+
+    SectionIndex(int[] positions, Object[] values, int rowCount) {
+        this(positions, values, rowCount, null, null);
+    }
+
+    SectionIndex(int[] positions, Object[] values, int rowCount, long[] rowIds, byte[] levels) {
+        this(positions, values, rowCount, rowIds, levels, null);
+    }
+
+    SectionIndex(int[] positions, Object[] values, int rowCount, long[] rowIds, byte[] levels, int[] itemCounts) {
+        if (positions.length != values.length || (levels != null && levels.length != positions.length)
+                || (itemCounts != null && itemCounts.length != positions.length)) {
+            throw new IllegalArgumentException("Section positions, values, levels and counts must be the same length.");
+        }
+        mPositions = positions;
+        mValues = values;
+        mRowCount = rowCount;
+        mRowIds = rowIds;
+        mLevels = levels;
+        mItemCounts = itemCounts;
+        if (levels != null) {
+            int subsectionCount = 0;
+            for (byte level : levels) {
+                subsectionCount += level;
+            }
+            mSectionIndices = new int[levels.length - subsectionCount];
+            mSubsectionIndices = new int[subsectionCount];
+            mSectionEnds = new int[levels.length];
+            int sections = 0;
+            int subsections = 0;
+            for (int i = 0; i < levels.length; i++) {
+                if (levels[i] == LEVEL_SECTION) {
+                    mSectionIndices[sections++] = i;
+                } else {
+                    mSubsectionIndices[subsections++] = i;
+                }
+            }
+            // A section's rows end at the next section, a subsection's at the next header of either level.
+            int nextSection = levels.length;
+            for (int i = levels.length - 1; i >= 0; i--) {
+                if (levels[i] == LEVEL_SECTION) {
+                    mSectionEnds[i] = nextSection;
+                    nextSection = i;
+                } else {
+                    mSectionEnds[i] = i + 1;
+                }
+            }
+        } else {
+            mSectionIndices = null;
+            mSubsectionIndices = null;
+            mSectionEnds = null;
+        }
+        mGeneration = sGenerations.getAndIncrement();
+    }
+
+    /**
+     * @param sections A map whose keys are the position at which a section is and values are an object
+     * which will be passed to newSectionView and bindSectionView. May be null.
+     * @return an index holding the same sections as the map.
+     */
+    public static SectionIndex fromSortedMap(SortedMap<Integer, Object> sections) {
+        return fromSortedMap(sections, EMPTY);
+    }
+
+    /**
+     * Like fromSortedMap(SortedMap), but values equal to one of previous' values are replaced with previous'
+     * instance before the index is made. An index backed by the map is returned as it is.
+     */
+    static SectionIndex fromSortedMap(SortedMap<Integer, Object> sections, SectionIndex previous) {
+        if (sections == null || sections.isEmpty()) {
+            return EMPTY;
+        } else if (sections instanceof SortedMapView && ((SortedMapView) sections).mCopy == null) {
+            return ((SortedMapView) sections).mIndex;
+        }
+
+        int[] positions = new int[sections.size()];
+        Object[] values = new Object[sections.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Object> entry : sections.entrySet()) {
+            positions[i] = entry.getKey();
+            values[i] = entry.getValue();
+            if (i > 0 && positions[i] <= positions[i - 1]) {
+                throw new IllegalArgumentException("Section positions must be in ascending order.");
+            }
+            i++;
+        }
+        internValues(values, values.length, previous.mValues);
+        return new SectionIndex(positions, values, UNKNOWN_ROW_COUNT);
+    }
+
+    /**
+     * @return A new map whose keys are the position at which a section is and values are the section value.
+     */
+    public SortedMap<Integer, Object> toSortedMap() {
+        TreeMap<Integer, Object> sections = new TreeMap<Integer, Object>();
+        for (int i = 0; i < mPositions.length; i++) {
+            sections.put(mPositions[i], mValues[i]);
+        }
+        return sections;
+    }
+
+    /**
+     * @return A map backed by this index. Handing it back to {@link #fromSortedMap(SortedMap)} returns this
+     * index without copying. Changing the map first copies it into a TreeMap, the index itself never changes.
+     */
+    public SortedMap<Integer, Object> asSortedMap() {
+        return new SortedMapView(this);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    /**
+     * Writes the sections but not the row ids, which would make the parcel 8 bytes per row. The index read
+     * back has a new generation.
+     */
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeIntArray(mPositions);
+        dest.writeArray(mValues);
+        dest.writeInt(mRowCount);
+        dest.writeByteArray(mLevels);
+        dest.writeIntArray(mItemCounts);
+    }
+
+    /**
+     * @return The number of sections in this index.
+     */
+    public int size() {
+        return mPositions.length;
+    }
+
+    /**
+     * @return The number of cursor rows the sections were built for or {@link #UNKNOWN_ROW_COUNT} if the
+     * index was not made by a {@link Builder}.
+     */
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    /**
+     * @return A number which is higher for every index created after this one. An adapter whose index has
+     * the same generation as before is still showing the same sections.
+     */
+    public long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return The number of rows whose id was captured while building, which is either 0 or the row count.
+     */
+    public int getRowIdCount() {
+        return mRowIds != null ? mRowCount : 0;
+    }
+
+    /**
+     * @param cursorPosition a cursor position less than {@link #getRowIdCount()}.
+     * @return the _id of the row which was captured while building.
+     */
+    public long getRowId(int cursorPosition) {
+        if (cursorPosition >= getRowIdCount()) {
+            throw new IndexOutOfBoundsException("No row id captured for cursor position " + cursorPosition);
+        }
+        return mRowIds[cursorPosition];
+    }
+
+    /**
+     * @param sectionIndex an index in the ordered list of sections.
+     * @return the list position of the section's header.
+     */
+    public int getSectionPosition(int sectionIndex) {
+        return mPositions[sectionIndex];
+    }
+
+    /**
+     * @param sectionIndex an index in the ordered list of sections.
+     * @return the cursor position of the section's first row.
+     */
+    public int getSectionCursorStart(int sectionIndex) {
+        return mPositions[sectionIndex] - sectionIndex; // less the headers before it
+    }
+
+    /**
+     * A section's rows include the rows of its subsections. When the cursor isn't sorted by section these
+     * are the rows shown under the header, which may include rows of sections whose header came earlier.
+     * @param sectionIndex an index in the ordered list of sections.
+     * @return the cursor position after the section's last row, or {@link #UNKNOWN_ROW_COUNT} for the last
+     * section when the row count is unknown.
+     */
+    public int getSectionCursorEnd(int sectionIndex) {
+        int end = mSectionEnds != null ? mSectionEnds[sectionIndex] : sectionIndex + 1;
+        return end < mPositions.length ? mPositions[end] - end : mRowCount;
+    }
+
+    /**
+     * A {@link Builder} for a cursor which isn't sorted by section counts every row of the section, wherever
+     * it is in the cursor. Otherwise the rows up to the next header are counted.
+     * @param sectionIndex an index in the ordered list of sections.
+     * @return the number of rows in the section, or {@link #UNKNOWN_ROW_COUNT} for the last section when the
+     * row count is unknown.
+     */
+    public int getSectionItemCount(int sectionIndex) {
+        if (mItemCounts != null) {
+            return mItemCounts[sectionIndex];
+        }
+        int end = getSectionCursorEnd(sectionIndex);
+        return end != UNKNOWN_ROW_COUNT ? end - getSectionCursorStart(sectionIndex) : UNKNOWN_ROW_COUNT;
+    }
+
+    /**
+     * @param sectionIndex an index in the ordered list of sections.
+     * @return a new array holding {@link #getSectionCursorStart(int)} and {@link #getSectionCursorEnd(int)}.
+     */
+    public int[] getSectionCursorRange(int sectionIndex) {
+        return new int[] {getSectionCursorStart(sectionIndex), getSectionCursorEnd(sectionIndex)};
+    }
+
+    /**
+     * @param sectionIndex an index in the ordered list of sections.
+     * @return the section value which is passed to newSectionView and bindSectionView.
+     */
+    public Object getSectionValue(int sectionIndex) {
+        return mValues[sectionIndex];
+    }
+
+    /**
+     * @param sectionIndex an index in the ordered list of sections.
+     * @return {@link #LEVEL_SECTION} or {@link #LEVEL_SUBSECTION}.
+     */
+    public int getSectionLevel(int sectionIndex) {
+        return mLevels != null ? mLevels[sectionIndex] : LEVEL_SECTION;
+    }
+
+    /**
+     * @return true if any header is a subsection.
+     */
+    public boolean hasSubsections() {
+        return mLevels != null;
+    }
+
+    /**
+     * @param level {@link #LEVEL_SECTION} or {@link #LEVEL_SUBSECTION}.
+     * @return the number of headers at level.
+     */
+    public int getSectionCount(int level) {
+        if (mLevels == null) {
+            return level == LEVEL_SECTION ? mPositions.length : 0;
+        }
+        return getLevelIndices(level).length;
+    }
+
+    /**
+     * @param level {@link #LEVEL_SECTION} or {@link #LEVEL_SUBSECTION}.
+     * @param indexWithinLevel an index less than {@link #getSectionCount(int)} for level.
+     * @return the index in the ordered list of sections of both levels, for getSectionPosition and getSectionValue.
+     */
+    public int getSectionIndex(int level, int indexWithinLevel) {
+        if (mLevels == null) {
+            if (level != LEVEL_SECTION) {
+                throw new IndexOutOfBoundsException("No subsection " + indexWithinLevel);
+            }
+            return indexWithinLevel;
+        }
+        return getLevelIndices(level)[indexWithinLevel];
+    }
+
+    /**
+     * Finds which header of a level a list position is under in O(log n). A position is under a subsection
+     * only until the next section starts, so rows at the start of a section which come before its first
+     * subsection are not under any subsection.
+     *
+     * @param level {@link #LEVEL_SECTION} or {@link #LEVEL_SUBSECTION}.
+     * @param listPosition the position of the current item in the list with sections included
+     * @return the index within level of the header listPosition is under, or -1 if it is under none.
+     */
+    public int getIndexWithinLevel(int level, int listPosition) {
+        int sectionIndex = indexOfSection(listPosition);
+        sectionIndex = sectionIndex >= 0 ? sectionIndex : -(sectionIndex + 1) - 1; // the header at or before
+        if (mLevels == null) {
+            return level == LEVEL_SECTION ? sectionIndex : -1;
+        }
+        int section = countAtOrBefore(mSectionIndices, sectionIndex) - 1;
+        if (level == LEVEL_SECTION) {
+            return section;
+        }
+        int subsection = countAtOrBefore(mSubsectionIndices, sectionIndex) - 1;
+        if (subsection < 0 || (section >= 0 && mSectionIndices[section] > mSubsectionIndices[subsection])) {
+            return -1;
+        }
+        return subsection;
+    }
+
+    /**
+     * @return the number of sorted indices which are less than or equal to sectionIndex.
+     */
+    private static int countAtOrBefore(int[] indices, int sectionIndex) {
+        int low = 0;
+        int high = indices.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indices[mid] <= sectionIndex) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private int[] getLevelIndices(int level) {
+        if (level == LEVEL_SECTION) {
+            return mSectionIndices;
+        } else if (level == LEVEL_SUBSECTION) {
+            return mSubsectionIndices;
+        }
+        throw new IllegalArgumentException("Unknown section level " + level);
+    }
+
+    /**
+     * @param listPosition the position of the current item in the list with sections included
+     * @return Whether or not the listPosition points to a section.
+     */
+    public boolean isSection(int listPosition) {
+        return indexOfSection(listPosition) >= 0;
+    }
+
+    /**
+     * @param listPosition the position of the current item in the list with sections included
+     * @return the section value if the listPosition points to a section, otherwise null.
+     */
+    public Object getValueAt(int listPosition) {
+        int sectionIndex = indexOfSection(listPosition);
+        return sectionIndex >= 0 ? mValues[sectionIndex] : null;
+    }
+
+    /**
+     * Binary searches the header positions.
+     *
+     * @param listPosition the position of the current item in the list with sections included
+     * @return the index of the section at listPosition if there is one, otherwise (-(insertion point) - 1)
+     * where the insertion point is the number of sections before listPosition.
+     */
+    public int indexOfSection(int listPosition) {
+        int low = 0;
+        int high = mPositions.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midPosition = mPositions[mid];
+            if (midPosition < listPosition) {
+                low = mid + 1;
+            } else if (midPosition > listPosition) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Finds the section index for a given list position in O(log n).
+     *
+     * @param listPosition the position of the current item in the list with sections included
+     * @return an index in the ordered list of sections. Positions before the first section map to 0.
+     */
+    public int getIndexWithinSections(int listPosition) {
+        int sectionIndex = indexOfSection(listPosition);
+        if (sectionIndex >= 0) {
+            return sectionIndex;
+        }
+        int numPrecedingSections = -(sectionIndex + 1);
+        return Math.max(numPrecedingSections - 1, 0);
+    }
+
+    /**
+     * Maps a position in the list (which includes sections) to a position in the cursor
+     * (which does not contain sections) in O(log n).
+     *
+     * @param listPosition the position of the current item in the list with sections included
+     * @return the position to use with the cursor or
+     * {@link #NO_CURSOR_POSITION} if listPosition is a section.
+     */
+    public int getCursorPosition(int listPosition) {
+        if (mPositions.length == 0) {
+            return listPosition;
+        }
+        int sectionIndex = indexOfSection(listPosition);
+        if (sectionIndex >= 0) {
+            return NO_CURSOR_POSITION;
+        }
+        int numPrecedingSections = -(sectionIndex + 1);
+        return listPosition - numPrecedingSections;
+    }
+
+    /**
+     * @param sectionIndex an index in the ordered list of sections.
+     * @return the value a header's default id is derived from: a section's own value, or a list of its
+     * section's value and its own value for a subsection, as cities of different countries may share a name.
+     */
+    Object getSectionIdValue(int sectionIndex) {
+        if (getSectionLevel(sectionIndex) == LEVEL_SECTION) {
+            return mValues[sectionIndex];
+        }
+        int section = countAtOrBefore(mSectionIndices, sectionIndex) - 1;
+        Object sectionValue = section >= 0 ? mValues[mSectionIndices[section]] : null;
+        return Arrays.asList(sectionValue, mValues[sectionIndex]);
+    }
+
+    /**
+     * @return a negative id derived from value's hash code, so it can't collide with the _id of a row.
+     */
+    static long getDefaultSectionId(Object value) {
+        return Long.MIN_VALUE + ((value != null ? value.hashCode() : 0) & 0xffffffffL);
+    }
+
+    /**
+     * @return a copy of the section values in order.
+     */
+    public Object[] getSectionValues() {
+        Object[] values = new Object[mValues.length];
+        System.arraycopy(mValues, 0, values, 0, mValues.length);
+        return values;
+    }
+
+    /**
+     * @return a copy of the values of the headers at level, in order.
+     */
+    Object[] getSectionValuesArray(int level) {
+        if (mLevels == null && level == LEVEL_SECTION) {
+            return getSectionValues();
+        }
+        int count = getSectionCount(level);
+        Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = mValues[getSectionIndex(level, i)];
+        }
+        return values;
+    }
+
+    /**
+     * @return true if other has the same section values at the same levels in the same order, wherever
+     * their headers are.
+     */
+    boolean hasSameValues(SectionIndex other) {
+        if (other == null || other.mValues.length != mValues.length || !Arrays.equals(mLevels, other.mLevels)) {
+            return false;
+        }
+        for (int i = 0; i < mValues.length; i++) {
+            Object value = mValues[i];
+            Object otherValue = other.mValues[i];
+            if (value != otherValue && (value == null || !value.equals(otherValue))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the first size values which are equal to one of previousValues with that instance, so
+     * sections which are still shown after a rebuild are only held once.
+     */
+    private static void internValues(Object[] values, int size, Object[] previousValues) {
+        if (previousValues.length == 0 || previousValues == values) {
+            return;
+        }
+        HashMap<Object, Object> interned = null;
+        for (int i = 0; i < size; i++) {
+            Object value = values[i];
+            if (value == null) {
+                continue;
+            }
+            // Most sections are usually at the same index as before, which avoids building the map.
+            Object previousValue = i < previousValues.length ? previousValues[i] : null;
+            if (previousValue != value && value.equals(previousValue)) {
+                values[i] = previousValue;
+                continue;
+            } else if (previousValue == value) {
+                continue;
+            }
+            if (interned == null) {
+                interned = new HashMap<Object, Object>(previousValues.length * 4 / 3 + 1);
+                for (Object v : previousValues) {
+                    if (v != null) {
+                        interned.put(v, v);
+                    }
+                }
+            }
+            Object internedValue = interned.get(value);
+            if (internedValue != null) {
+                values[i] = internedValue;
+            }
+        }
+    }
+
+    /**
+     * Estimates the memory held by this index, including its section values, so it can be budgeted for.
+     * Strings, boxed numbers and the index's arrays are measured; other section values count as a plain
+     * object. Values which are also held elsewhere, for example by the previous index, are counted anyway.
+     * @return the approximate retained size in bytes.
+     */
+    public long estimateRetainedSize() {
+        long size = align(OBJECT_HEADER_BYTES + 8 * REFERENCE_BYTES + 4 + 8)
+                + align(ARRAY_HEADER_BYTES + 4L * mPositions.length)
+                + align(ARRAY_HEADER_BYTES + (long) REFERENCE_BYTES * mValues.length);
+        if (mRowIds != null) {
+            size += align(ARRAY_HEADER_BYTES + 8L * mRowIds.length);
+        }
+        if (mItemCounts != null) {
+            size += align(ARRAY_HEADER_BYTES + 4L * mItemCounts.length);
+        }
+        if (mLevels != null) {
+            size += align(ARRAY_HEADER_BYTES + mLevels.length)
+                    + align(ARRAY_HEADER_BYTES + 4L * mSectionEnds.length)
+                    + align(ARRAY_HEADER_BYTES + 4L * mSectionIndices.length)
+                    + align(ARRAY_HEADER_BYTES + 4L * mSubsectionIndices.length);
+        }
+        Object previous = null;
+        for (Object value : mValues) {
+            if (value != previous) {
+                size += estimateSize(value);
+            }
+            previous = value;
+        }
+        return size;
+    }
+
+    /**
+     * @return roughly how many bytes writeToParcel writes, which is the retained size less the row ids.
+     */
+    long estimateParcelSize() {
+        long size = estimateRetainedSize();
+        return mRowIds != null ? size - align(ARRAY_HEADER_BYTES + 8L * mRowIds.length) : size;
+    }
+
+    /**
+     * @return true if Parcel.writeValue can write every section value.
+     */
+    boolean hasParcelableValues() {
+        for (Object value : mValues) {
+            if (value != null && !(value instanceof Parcelable) && !(value instanceof Serializable)
+                    && !(value instanceof CharSequence)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long estimateSize(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String) {
+            // value, offset, count and hash fields plus the char array
+            return align(OBJECT_HEADER_BYTES + REFERENCE_BYTES + 12)
+                    + align(ARRAY_HEADER_BYTES + 2L * ((String) value).length());
+        } else if (value instanceof Long || value instanceof Double) {
+            return align(OBJECT_HEADER_BYTES + 8);
+        } else {
+            return align(OBJECT_HEADER_BYTES + 4);
+        }
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * @return the number of sections whose header is before listPosition.
+     */
+    private int countSectionsBefore(int listPosition) {
+        int sectionIndex = indexOfSection(listPosition);
+        return sectionIndex >= 0 ? sectionIndex : -(sectionIndex + 1);
+    }
+
+    private SectionIndex slice(int fromSectionIndex, int toSectionIndex) {
+        int size = Math.max(toSectionIndex - fromSectionIndex, 0);
+        if (size == mPositions.length) {
+            return this;
+        }
+        int[] positions = new int[size];
+        Object[] values = new Object[size];
+        System.arraycopy(mPositions, fromSectionIndex, positions, 0, size);
+        System.arraycopy(mValues, fromSectionIndex, values, 0, size);
+        byte[] levels = null;
+        if (mLevels != null) {
+            levels = new byte[size];
+            System.arraycopy(mLevels, fromSectionIndex, levels, 0, size);
+        }
+        return new SectionIndex(positions, values, UNKNOWN_ROW_COUNT, null, levels);
+    }
+
+    /**
+     * Reads the sections of a cursor's rows for {@link Builder#appendRows(Cursor, SectionKey.Scanner,
+     * SectionReader, int, int)}, usually by calling the adapter's or loader's methods of the same name.
+     */
+    public interface SectionReader {
+
+        /**
+         * Not called for rows whose section is read with a SectionKey.
+         * @return the section of the cursor's current row.
+         */
+        Object getSectionFromCursor(Cursor cursor);
+
+        /**
+         * @return the subsection of the cursor's current row, or null if the row has none.
+         */
+        Object getSubsectionFromCursor(Cursor cursor);
+
+        /**
+         * Checked before each row is read.
+         * @return true to stop reading rows, for example because the cursor was replaced or closed.
+         */
+        boolean isCancelled(Cursor cursor);
+    }
+
+    /**
+     * Builds a SectionIndex one cursor row at a time in O(rows).
+     *
+     * When the cursor is sorted by section a row only has to be compared against the previous row.
+     * Otherwise the sections which have been seen are kept in a hash set and a section header is
+     * only added the first time its value shows up.
+     *
+     * Rows appended with a subsection also get a subsection header whenever their subsection changes
+     * within a section, in the same pass.
+     */
+    public static final class Builder {
+
+        private static final int DEFAULT_CAPACITY = 16;
+
+        private final HashMap<Object, Integer> mSeenSections; // header index of each section, null when sorted
+        private final HashMap<Object, Integer> mSeenSubsections; // keyed by section and subsection pairs, null when sorted
+
+        private int[] mPositions = new int[DEFAULT_CAPACITY];
+        private Object[] mValues = new Object[DEFAULT_CAPACITY];
+        private int mSize;
+        private int mRowCount;
+        private Object mLastSection;
+        private Object mLastSubsection; // the subsection of the last row, null at the start of a section
+        private byte[] mLevels; // null until appendSubsection is called
+        private long[] mRowIds; // null until appendRowId is called
+        private int mRowIdCount;
+        private Object[] mPreviousValues; // values whose instances build() reuses, null unless internValues is called
+        private int[] mItemCounts; // rows of each header's section, null when sorted
+        private int mRowSection = -1; // the headers the next row is counted for, when not sorted
+        private int mRowSubsection = -1;
+
+        /**
+         * @param sortedBySection true if rows of the same section are next to each other in the cursor.
+         * Otherwise the rows of each section are also counted, wherever they are.
+         */
+        public Builder(boolean sortedBySection) {
+            mSeenSections = sortedBySection ? null : new HashMap<Object, Integer>();
+            mSeenSubsections = sortedBySection ? null : new HashMap<Object, Integer>();
+            mItemCounts = sortedBySection ? null : new int[DEFAULT_CAPACITY];
+        }
+
+        /**
+         * Continues building from an existing index so rows appended to its cursor can be added without
+         * scanning the rows it already covers.
+         * @param previous an index whose row count is known.
+         * @param sortedBySection true if rows of the same section are next to each other in the cursor.
+         */
+        public Builder(SectionIndex previous, boolean sortedBySection) {
+            this(sortedBySection);
+            if (previous.mRowCount == UNKNOWN_ROW_COUNT) {
+                throw new IllegalArgumentException("Can only continue building from an index with a known row count.");
+            }
+            int size = previous.size();
+            int capacity = Math.max(size * 2, DEFAULT_CAPACITY);
+            mPositions = new int[capacity];
+            mValues = new Object[capacity];
+            System.arraycopy(previous.mPositions, 0, mPositions, 0, size);
+            System.arraycopy(previous.mValues, 0, mValues, 0, size);
+            if (previous.mLevels != null) {
+                mLevels = new byte[capacity];
+                System.arraycopy(previous.mLevels, 0, mLevels, 0, size);
+            }
+            if (mItemCounts != null) {
+                mItemCounts = new int[capacity];
+                for (int i = 0; i < size; i++) {
+                    mItemCounts[i] = previous.getSectionItemCount(i);
+                }
+            }
+            mSize = size;
+            mRowCount = previous.mRowCount;
+            if (previous.mRowIds != null) {
+                mRowIds = new long[Math.max(mRowCount * 2, DEFAULT_CAPACITY)];
+                System.arraycopy(previous.mRowIds, 0, mRowIds, 0, mRowCount);
+                mRowIdCount = mRowCount;
+            }
+            for (int i = 0; i < size; i++) {
+                if (previous.getSectionLevel(i) == LEVEL_SECTION) {
+                    mLastSection = mValues[i];
+                    mLastSubsection = null;
+                    mRowSection = i;
+                    mRowSubsection = -1;
+                    if (mSeenSections != null) {
+                        mSeenSections.put(mLastSection, i);
+                    }
+                } else {
+                    mLastSubsection = mValues[i];
+                    mRowSubsection = i;
+                    if (mSeenSubsections != null) {
+                        mSeenSubsections.put(Arrays.asList(mLastSection, mLastSubsection), i);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds a section header before the next row.
+         * @param section the value which will be passed to newSectionView and bindSectionView.
+         */
+        public Builder appendSection(Object section) {
+            appendHeader(section, LEVEL_SECTION);
+            mLastSection = section;
+            mLastSubsection = null;
+            mRowSection = mSize - 1;
+            mRowSubsection = -1;
+            return this;
+        }
+
+        /**
+         * Adds a subsection header before the next row, within the last section appended.
+         * @param subsection the value which will be passed to newSubsectionView and bindSubsectionView.
+         */
+        public Builder appendSubsection(Object subsection) {
+            if (mLevels == null) {
+                mLevels = new byte[mPositions.length];
+            }
+            appendHeader(subsection, LEVEL_SUBSECTION);
+            mLastSubsection = subsection;
+            mRowSubsection = mSize - 1;
+            return this;
+        }
+
+        private void appendHeader(Object value, int level) {
+            if (mSize == mPositions.length) {
+                int capacity = mSize * 2;
+                int[] positions = new int[capacity];
+                Object[] values = new Object[capacity];
+                System.arraycopy(mPositions, 0, positions, 0, mSize);
+                System.arraycopy(mValues, 0, values, 0, mSize);
+                mPositions = positions;
+                mValues = values;
+                if (mLevels != null) {
+                    byte[] levels = new byte[capacity];
+                    System.arraycopy(mLevels, 0, levels, 0, mSize);
+                    mLevels = levels;
+                }
+                if (mItemCounts != null) {
+                    int[] itemCounts = new int[capacity];
+                    System.arraycopy(mItemCounts, 0, itemCounts, 0, mSize);
+                    mItemCounts = itemCounts;
+                }
+            }
+            mPositions[mSize] = mRowCount + mSize;
+            mValues[mSize] = value;
+            if (mLevels != null) {
+                mLevels[mSize] = (byte) level;
+            }
+            mSize++;
+        }
+
+        /**
+         * Adds a row without checking if it starts a new section.
+         */
+        public Builder appendRow() {
+            return appendRows(1);
+        }
+
+        /**
+         * Adds rows without checking if they start a new section.
+         */
+        public Builder appendRows(int count) {
+            if (mItemCounts != null && mRowSection >= 0) {
+                mItemCounts[mRowSection] += count;
+                if (mRowSubsection >= 0) {
+                    mItemCounts[mRowSubsection] += count;
+                }
+            }
+            mRowCount += count;
+            return this;
+        }
+
+        /**
+         * Adds a section header followed by its rows for every row in sectionCounts, for example the result
+         * of a "SELECT section, COUNT(*) ... GROUP BY section" query. Sections without rows are skipped.
+         * The counts cursor must be in the same order as the cursor the sections are for.
+         * @param sectionCounts a cursor with a row for each section.
+         * @param sectionColumn the column of the section's value, which is read as a String.
+         * @param countColumn the column of the number of rows in the section.
+         */
+        public Builder appendSectionCounts(Cursor sectionCounts, int sectionColumn, int countColumn) {
+            sectionCounts.moveToPosition(-1);
+            while (sectionCounts.moveToNext()) {
+                int count = sectionCounts.getInt(countColumn);
+                if (count > 0) {
+                    appendSection(sectionCounts.getString(sectionColumn));
+                    appendRows(count);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Adds a row, first adding a section header if the row starts a new section.
+         * @param section the section of the row as returned by getSectionFromCursor.
+         */
+        public Builder appendRow(Object section) {
+            return appendRow(section, null);
+        }
+
+        /**
+         * Adds a row, first adding a section header if the row starts a new section and a subsection header
+         * if it starts a new subsection.
+         * @param section the section of the row as returned by getSectionFromCursor.
+         * @param subsection the subsection of the row as returned by getSubsectionFromCursor, or null for none.
+         */
+        public Builder appendRow(Object section, Object subsection) {
+            boolean startsNewSection;
+            if (mSeenSections == null) {
+                startsNewSection = mSize == 0 || !equal(mLastSection, section);
+            } else {
+                Integer header = mSeenSections.get(section);
+                startsNewSection = header == null;
+                if (header != null) {
+                    mRowSection = header;
+                    mRowSubsection = -1;
+                }
+            }
+            if (startsNewSection) {
+                appendSection(section);
+                if (mSeenSections != null) {
+                    mSeenSections.put(section, mSize - 1);
+                }
+            }
+            appendSubsectionIfNew(section, subsection);
+            return appendRow();
+        }
+
+        /**
+         * Reads the cursor's current row with scanner and adds it, first adding a section header if the row
+         * starts a new section. This only reads the row's section when it differs from the previous row's, and
+         * on a cursor sorted by section doesn't allocate unless a section starts.
+         * @param cursor a cursor moved to the row to add.
+         * @param scanner a scanner which has read every row added so far.
+         */
+        public Builder appendRow(Cursor cursor, SectionKey.Scanner scanner) {
+            return appendRow(cursor, scanner, null);
+        }
+
+        /**
+         * Reads the cursor's current row with scanner and adds it, first adding a section header if the row
+         * starts a new section and a subsection header if it starts a new subsection.
+         * @param cursor a cursor moved to the row to add.
+         * @param scanner a scanner which has read every row added so far.
+         * @param subsection the subsection of the row as returned by getSubsectionFromCursor, or null for none.
+         */
+        public Builder appendRow(Cursor cursor, SectionKey.Scanner scanner, Object subsection) {
+            boolean startsNewSection = scanner.startsNewSection(cursor);
+            if (mSeenSections != null) {
+                if (startsNewSection || mRowSection < 0) {
+                    return appendRow(scanner.getSection(), subsection);
+                }
+                // Same section as the previous row, so its header is already known.
+                mRowSubsection = -1;
+                appendSubsectionIfNew(mValues[mRowSection], subsection);
+                return appendRow();
+            }
+            if (startsNewSection) {
+                appendSection(scanner.getSection());
+            }
+            appendSubsectionIfNew(mLastSection, subsection);
+            return appendRow();
+        }
+
+        private void appendSubsectionIfNew(Object section, Object subsection) {
+            if (subsection == null) {
+                return;
+            } else if (mSeenSubsections == null) {
+                if (!subsection.equals(mLastSubsection)) {
+                    appendSubsection(subsection);
+                }
+            } else {
+                List<Object> key = Arrays.asList(section, subsection);
+                Integer header = mSeenSubsections.get(key);
+                if (header != null) {
+                    mRowSubsection = header;
+                } else {
+                    appendSubsection(subsection);
+                    mSeenSubsections.put(key, mSize - 1);
+                }
+            }
+        }
+
+        /**
+         * Appends up to maxRows rows after the cursor's current position, reading each row's section with
+         * scanner, or with reader when there is no scanner, and its subsection with reader.
+         * @param cursor the cursor to read, positioned on the last row already appended or at -1.
+         * @param scanner a scanner which has read every row added so far, or null to call
+         * reader.getSectionFromCursor for every row.
+         * @param reader reads each row's subsection, and its section without a scanner.
+         * @param idColumn the column to capture each row's id from with appendRowId, or -1 to not capture ids.
+         * @param maxRows the number of rows to append at most.
+         * @return false if the cursor ran out of rows or the reader cancelled the build.
+         */
+        public boolean appendRows(Cursor cursor, SectionKey.Scanner scanner, SectionReader reader, int idColumn,
+                int maxRows) {
+            for (int i = 0; i < maxRows; i++) {
+                if (reader.isCancelled(cursor) || !cursor.moveToNext()) {
+                    return false;
+                }
+                int cursorPosition = cursor.getPosition();
+                Object subsection = reader.getSubsectionFromCursor(cursor);
+                if (scanner != null) {
+                    appendRow(cursor, scanner, subsection);
+                } else {
+                    appendRow(reader.getSectionFromCursor(cursor), subsection);
+                }
+                if (cursor.getPosition() != cursorPosition)
+                    throw new IllegalStateException("Do no move the cursor's position in getSectionFromCursor.");
+                if (idColumn >= 0) {
+                    appendRowId(cursor.getLong(idColumn));
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Records the _id of the row which was just appended, so the adapter can answer getItemId without
+         * moving the cursor. Ids are only kept in the index if every row's id was appended.
+         */
+        public Builder appendRowId(long id) {
+            if (mRowIds == null) {
+                mRowIds = new long[Math.max(mRowCount, DEFAULT_CAPACITY)];
+            } else if (mRowIdCount == mRowIds.length) {
+                long[] rowIds = new long[mRowIdCount * 2];
+                System.arraycopy(mRowIds, 0, rowIds, 0, mRowIdCount);
+                mRowIds = rowIds;
+            }
+            mRowIds[mRowIdCount++] = id;
+            return this;
+        }
+
+        /**
+         * @return The number of rows appended so far.
+         */
+        public int getRowCount() {
+            return mRowCount;
+        }
+
+        /**
+         * @return The number of headers appended so far.
+         */
+        public int size() {
+            return mSize;
+        }
+
+        /**
+         * @param sectionIndex an index in the ordered list of headers appended so far.
+         * @return the list position of the header.
+         */
+        public int getSectionPosition(int sectionIndex) {
+            return mPositions[sectionIndex];
+        }
+
+        /**
+         * Makes build() replace section values which are equal to one of previous' values with previous'
+         * instance, so sections which are still shown after a rebuild are only held once.
+         * @param previous the index which was built before this one.
+         */
+        public Builder internValues(SectionIndex previous) {
+            mPreviousValues = previous.mValues;
+            return this;
+        }
+
+        public SectionIndex build() {
+            if (mPreviousValues != null) {
+                SectionIndex.internValues(mValues, mSize, mPreviousValues);
+            }
+            int[] positions = new int[mSize];
+            Object[] values = new Object[mSize];
+            System.arraycopy(mPositions, 0, positions, 0, mSize);
+            System.arraycopy(mValues, 0, values, 0, mSize);
+            // Indices built along the way share the ids array as they never read past their own row count.
+            long[] rowIds = mRowIdCount == mRowCount && mRowCount > 0 ? mRowIds : null;
+            byte[] levels = null;
+            if (mLevels != null) {
+                levels = new byte[mSize];
+                System.arraycopy(mLevels, 0, levels, 0, mSize);
+            }
+            int[] itemCounts = null;
+            if (mItemCounts != null) {
+                itemCounts = new int[mSize];
+                System.arraycopy(mItemCounts, 0, itemCounts, 0, mSize);
+            }
+            return new SectionIndex(positions, values, mRowCount, rowIds, levels, itemCounts);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == b || (a != null && a.equals(b));
+        }
+    }
+
+    /**
+     * SortedMap over a SectionIndex, kept so buildSections(Cursor) can still return a map. It is copied into
+     * a TreeMap the first time it is changed, so a subclass may add to the map built by super.
+     */
+    private static final class SortedMapView extends AbstractMap<Integer, Object> implements SortedMap<Integer, Object> {
+
+        final SectionIndex mIndex;
+        SortedMap<Integer, Object> mCopy; // null until the map is changed
+
+        SortedMapView(SectionIndex index) {
+            mIndex = index;
+        }
+
+        private SortedMap<Integer, Object> copy() {
+            if (mCopy == null) {
+                mCopy = mIndex.toSortedMap();
+            }
+            return mCopy;
+        }
+
+        @Override
+        public int size() {
+            return mCopy != null ? mCopy.size() : mIndex.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if (mCopy != null) {
+                return mCopy.containsKey(key);
+            }
+            return key instanceof Integer && mIndex.isSection((Integer) key);
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (mCopy != null) {
+                return mCopy.get(key);
+            }
+            return key instanceof Integer ? mIndex.getValueAt((Integer) key) : null;
+        }
+
+        @Override
+        public Object put(Integer key, Object value) {
+            return copy().put(key, value);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return copy().remove(key);
+        }
+
+        @Override
+        public void clear() {
+            copy().clear();
+        }
+
+        @Override
+        public Set<Entry<Integer, Object>> entrySet() {
+            if (mCopy != null) {
+                return mCopy.entrySet();
+            }
+            return new AbstractSet<Entry<Integer, Object>>() {
+                @Override
+                public Iterator<Entry<Integer, Object>> iterator() {
+                    return new Iterator<Entry<Integer, Object>>() {
+                        private int mNext;
+
+                        @Override
+                        public boolean hasNext() {
+                            return mNext < mIndex.size();
+                        }
+
+                        @Override
+                        public Entry<Integer, Object> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int sectionIndex = mNext++;
+                            return new SectionEntry(mIndex.getSectionPosition(sectionIndex), mIndex.getSectionValue(sectionIndex));
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return mIndex.size();
+                }
+            };
+        }
+
+        @Override
+        public Comparator<? super Integer> comparator() {
+            return null;
+        }
+
+        @Override
+        public SortedMap<Integer, Object> subMap(Integer fromKey, Integer toKey) {
+            if (mCopy != null) {
+                return mCopy.subMap(fromKey, toKey);
+            }
+            return mIndex.slice(mIndex.countSectionsBefore(fromKey), mIndex.countSectionsBefore(toKey)).asSortedMap();
+        }
+
+        @Override
+        public SortedMap<Integer, Object> headMap(Integer toKey) {
+            if (mCopy != null) {
+                return mCopy.headMap(toKey);
+            }
+            return mIndex.slice(0, mIndex.countSectionsBefore(toKey)).asSortedMap();
+        }
+
+        @Override
+        public SortedMap<Integer, Object> tailMap(Integer fromKey) {
+            if (mCopy != null) {
+                return mCopy.tailMap(fromKey);
+            }
+            return mIndex.slice(mIndex.countSectionsBefore(fromKey), mIndex.size()).asSortedMap();
+        }
+
+        @Override
+        public Integer firstKey() {
+            if (mCopy != null) {
+                return mCopy.firstKey();
+            } else if (mIndex.size() == 0) {
+                throw new NoSuchElementException();
+            }
+            return mIndex.getSectionPosition(0);
+        }
+
+        @Override
+        public Integer lastKey() {
+            if (mCopy != null) {
+                return mCopy.lastKey();
+            } else if (mIndex.size() == 0) {
+                throw new NoSuchElementException();
+            }
+            return mIndex.getSectionPosition(mIndex.size() - 1);
+        }
+    }
+
+    private static final class SectionEntry implements Map.Entry<Integer, Object> {
+
+        private final Integer mKey;
+        private final Object mValue;
+
+        SectionEntry(Integer key, Object value) {
+            mKey = key;
+            mValue = value;
+        }
+
+        @Override
+        public Integer getKey() {
+            return mKey;
+        }
+
+        @Override
+        public Object getValue() {
+            return mValue;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            return mKey.equals(entry.getKey()) && Builder.equal(mValue, entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return mKey.hashCode() ^ (mValue == null ? 0 : mValue.hashCode());
+        }
+    }
+}
@@ -0,0 +1,473 @@
+package com.twotoasters.sectioncursoradapter;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.SparseIntArray;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.text.DateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Describes how to read a row's section straight from a cursor column.
+ *
+ * Rows are compared with the previous row using primitive reads, so building sections from a cursor
+ * sorted by the key does not allocate per row. A section object is only created for the first row of
+ * each section.
+ */
+public abstract class SectionKey {
+
+    private final String mColumnName;
+
+    protected SectionKey(String columnName) {
+        mColumnName = columnName;
+    }
+
+    /**
+     * @return The name of the column the section is read from.
+     */
+    public String getColumnName() {
+        return mColumnName;
+    }
+
+    /**
+     * @param cursor the cursor which the scanner will read rows from.
+     * @return a new scanner which reads this key from the rows of cursor. A scanner may only be used by one thread.
+     */
+    public Scanner newScanner(Cursor cursor) {
+        return newScanner(cursor.getColumnIndexOrThrow(mColumnName));
+    }
+
+    /**
+     * @param columnIndex the index of the column the section is read from.
+     * @return a new scanner which reads this key from columnIndex.
+     */
+    protected abstract Scanner newScanner(int columnIndex);
+
+    /**
+     * Sections are the whole string value of the column. Null values are in the same section as empty strings.
+     */
+    public static SectionKey stringValue(String columnName) {
+        return new StringPrefixKey(columnName, Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * Sections are the first characters of the column's string value, for example the first letter of a name.
+     * @param length the number of characters in a section.
+     * @param ignoreCase true to compare the prefixes ignoring case. The sections will then be upper case.
+     */
+    public static SectionKey stringPrefix(String columnName, int length, boolean ignoreCase) {
+        if (length < 1) {
+            throw new IllegalArgumentException("A string prefix must be at least one character long.");
+        }
+        return new StringPrefixKey(columnName, length, ignoreCase);
+    }
+
+    /**
+     * Sections are the Integer value of the column. Null values are read as 0.
+     */
+    public static SectionKey intValue(String columnName) {
+        return new IntKey(columnName);
+    }
+
+    /**
+     * Sections are buckets of bucketSize values of the column, for example timestamps bucketed by hour.
+     * The section is a Long of the first value in the bucket. Null values are read as 0.
+     */
+    public static SectionKey longBucket(String columnName, long bucketSize) {
+        if (bucketSize < 1) {
+            throw new IllegalArgumentException("Bucket size must be positive.");
+        }
+        return new LongBucketKey(columnName, bucketSize);
+    }
+
+    /**
+     * Sections are the letters of an alphabet, as AlphabetIndexer makes them. A row is in the section of the
+     * last letter which its first character collates at or after, ignoring case and accents, so "&eacute;mile" is
+     * in "E" for an English alphabet. Rows before the first letter are in the first section, so start the
+     * alphabet with "#" to collect digits and symbols. The sections are the letters themselves, which also
+     * serve as fast scroll labels.
+     *
+     * Each distinct first character is only collated once per scan. Sort the cursor with the same collation,
+     * for example with "ORDER BY name COLLATE LOCALIZED".
+     * @param alphabet the section letters in collation order, for example "#ABCDEFGHIJKLMNOPQRSTUVWXYZ".
+     * @param locale the locale to collate with.
+     */
+    public static SectionKey firstLetter(String columnName, String alphabet, Locale locale) {
+        if (alphabet.length() == 0) {
+            throw new IllegalArgumentException("The alphabet must have at least one letter.");
+        }
+        return new FirstLetterKey(columnName, alphabet, locale);
+    }
+
+    /**
+     * Sections are the calendar days, weeks or months of a column of timestamps in milliseconds. The section
+     * is a {@link DateSection} whose toString is its start formatted with labelFormat. Null values are read as 0.
+     *
+     * Rows within the previous row's range are compared without any calendar work, so a cursor sorted by the
+     * column only does calendar math once per section.
+     * @param field {@link Calendar#DATE}, {@link Calendar#WEEK_OF_YEAR} or {@link Calendar#MONTH}.
+     * @param labelFormat the format for section labels. Its calendar's time zone and first day of the week
+     * decide where days, weeks and months start.
+     */
+    public static SectionKey dateBucket(String columnName, int field, DateFormat labelFormat) {
+        if (field != Calendar.DATE && field != Calendar.WEEK_OF_YEAR && field != Calendar.MONTH) {
+            throw new IllegalArgumentException("Dates can only be bucketed by DATE, WEEK_OF_YEAR or MONTH.");
+        }
+        return new DateBucketKey(columnName, field, labelFormat);
+    }
+
+    /**
+     * A section of {@link #dateBucket(String, int, DateFormat)}. It is Parcelable so an index of date
+     * sections can be kept in a saved instance state.
+     */
+    public static final class DateSection implements Parcelable {
+
+        public static final Parcelable.Creator<DateSection> CREATOR = new Parcelable.Creator<DateSection>() {
+            @Override
+            public DateSection createFromParcel(Parcel source) {
+                return new DateSection(source.readLong(), source.readLong(), source.readString());
+            }
+
+            @Override
+            public DateSection[] newArray(int size) {
+                return new DateSection[size];
+            }
+        };
+
+        private final long mStartMillis;
+        private final long mEndMillis;
+        private final String mLabel;
+
+        DateSection(long startMillis, long endMillis, String label) {
+            mStartMillis = startMillis;
+            mEndMillis = endMillis;
+            mLabel = label;
+        }
+
+        /**
+         * @return the first millisecond of the section's day, week or month.
+         */
+        public long getStartMillis() {
+            return mStartMillis;
+        }
+
+        /**
+         * @return the first millisecond after the section's day, week or month.
+         */
+        public long getEndMillis() {
+            return mEndMillis;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof DateSection && ((DateSection) o).mStartMillis == mStartMillis
+                    && ((DateSection) o).mEndMillis == mEndMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (mStartMillis ^ (mStartMillis >>> 32));
+        }
+
+        /**
+         * @return the section's start in the key's label format.
+         */
+        @Override
+        public String toString() {
+            return mLabel;
+        }
+
+        @Override
+        public int describeContents() {
+            return 0;
+        }
+
+        @Override
+        public void writeToParcel(Parcel dest, int flags) {
+            dest.writeLong(mStartMillis);
+            dest.writeLong(mEndMillis);
+            dest.writeString(mLabel);
+        }
+    }
+
+    /**
+     * Reads a SectionKey from a cursor's rows, remembering the previous row's key.
+     */
+    public abstract static class Scanner {
+
+        /**
+         * Reads the key of the cursor's current row.
+         * @return true if the row is the first one read or its key differs from the previous row's key.
+         */
+        public abstract boolean startsNewSection(Cursor cursor);
+
+        /**
+         * @return the section for the row which was last read by startsNewSection.
+         */
+        public abstract Object getSection();
+    }
+
+    private static final class StringPrefixKey extends SectionKey {
+
+        private final int mLength;
+        private final boolean mIgnoreCase;
+
+        StringPrefixKey(String columnName, int length, boolean ignoreCase) {
+            super(columnName);
+            mLength = length;
+            mIgnoreCase = ignoreCase;
+        }
+
+        @Override
+        protected Scanner newScanner(final int columnIndex) {
+            return new Scanner() {
+                private CharArrayBuffer mCurrent = new CharArrayBuffer(32);
+                private CharArrayBuffer mPrevious = new CharArrayBuffer(32);
+                private boolean mHasPrevious;
+
+                @Override
+                public boolean startsNewSection(Cursor cursor) {
+                    CharArrayBuffer swap = mPrevious;
+                    mPrevious = mCurrent;
+                    mCurrent = swap;
+                    cursor.copyStringToBuffer(columnIndex, mCurrent);
+
+                    boolean isNewSection = !mHasPrevious || !samePrefix(mCurrent, mPrevious);
+                    mHasPrevious = true;
+                    return isNewSection;
+                }
+
+                @Override
+                public Object getSection() {
+                    int length = prefixLength(mCurrent);
+                    char[] chars = new char[length];
+                    for (int i = 0; i < length; i++) {
+                        chars[i] = mIgnoreCase ? Character.toUpperCase(mCurrent.data[i]) : mCurrent.data[i];
+                    }
+                    return new String(chars);
+                }
+            };
+        }
+
+        private int prefixLength(CharArrayBuffer buffer) {
+            return Math.min(buffer.sizeCopied, mLength);
+        }
+
+        private boolean samePrefix(CharArrayBuffer a, CharArrayBuffer b) {
+            int length = prefixLength(a);
+            if (length != prefixLength(b)) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                char charA = a.data[i];
+                char charB = b.data[i];
+                if (charA != charB && (!mIgnoreCase || Character.toUpperCase(charA) != Character.toUpperCase(charB))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class IntKey extends SectionKey {
+
+        IntKey(String columnName) {
+            super(columnName);
+        }
+
+        @Override
+        protected Scanner newScanner(final int columnIndex) {
+            return new Scanner() {
+                private int mCurrent;
+                private boolean mHasPrevious;
+
+                @Override
+                public boolean startsNewSection(Cursor cursor) {
+                    int value = cursor.getInt(columnIndex);
+                    boolean isNewSection = !mHasPrevious || value != mCurrent;
+                    mCurrent = value;
+                    mHasPrevious = true;
+                    return isNewSection;
+                }
+
+                @Override
+                public Object getSection() {
+                    return mCurrent;
+                }
+            };
+        }
+    }
+
+    private static final class LongBucketKey extends SectionKey {
+
+        private final long mBucketSize;
+
+        LongBucketKey(String columnName, long bucketSize) {
+            super(columnName);
+            mBucketSize = bucketSize;
+        }
+
+        @Override
+        protected Scanner newScanner(final int columnIndex) {
+            return new Scanner() {
+                private long mCurrent;
+                private boolean mHasPrevious;
+
+                @Override
+                public boolean startsNewSection(Cursor cursor) {
+                    long value = cursor.getLong(columnIndex);
+                    long bucket = value / mBucketSize;
+                    if (value < 0 && bucket * mBucketSize != value) {
+                        bucket--; // round down rather than towards zero
+                    }
+                    boolean isNewSection = !mHasPrevious || bucket != mCurrent;
+                    mCurrent = bucket;
+                    mHasPrevious = true;
+                    return isNewSection;
+                }
+
+                @Override
+                public Object getSection() {
+                    return mCurrent * mBucketSize;
+                }
+            };
+        }
+    }
+
+    private static final class FirstLetterKey extends SectionKey {
+
+        private final String[] mLetters;
+        private final Locale mLocale;
+
+        FirstLetterKey(String columnName, String alphabet, Locale locale) {
+            super(columnName);
+            mLetters = new String[alphabet.length()];
+            for (int i = 0; i < mLetters.length; i++) {
+                mLetters[i] = String.valueOf(alphabet.charAt(i));
+            }
+            mLocale = locale;
+        }
+
+        @Override
+        protected Scanner newScanner(final int columnIndex) {
+            // Collators aren't thread safe, so each scanner has its own.
+            final Collator collator = Collator.getInstance(mLocale);
+            collator.setStrength(Collator.PRIMARY);
+            final CollationKey[] letterKeys = new CollationKey[mLetters.length];
+            for (int i = 0; i < mLetters.length; i++) {
+                letterKeys[i] = collator.getCollationKey(mLetters[i]);
+            }
+
+            return new Scanner() {
+                private final CharArrayBuffer mBuffer = new CharArrayBuffer(32);
+                private final SparseIntArray mLetterOfChar = new SparseIntArray(); // first characters seen so far
+                private int mCurrent;
+                private boolean mHasPrevious;
+
+                @Override
+                public boolean startsNewSection(Cursor cursor) {
+                    cursor.copyStringToBuffer(columnIndex, mBuffer);
+                    int letter = mBuffer.sizeCopied > 0 ? getLetter(mBuffer.data[0]) : 0;
+                    boolean isNewSection = !mHasPrevious || letter != mCurrent;
+                    mCurrent = letter;
+                    mHasPrevious = true;
+                    return isNewSection;
+                }
+
+                @Override
+                public Object getSection() {
+                    return mLetters[mCurrent];
+                }
+
+                /**
+                 * @return the index of the last letter which c collates at or after, or 0 if it is before them all.
+                 */
+                private int getLetter(char c) {
+                    int letter = mLetterOfChar.get(c, -1);
+                    if (letter >= 0) {
+                        return letter;
+                    }
+                    CollationKey key = collator.getCollationKey(String.valueOf(c));
+                    int low = 0;
+                    int high = letterKeys.length - 1;
+                    while (low <= high) {
+                        int mid = (low + high) >>> 1;
+                        if (letterKeys[mid].compareTo(key) <= 0) {
+                            low = mid + 1;
+                        } else {
+                            high = mid - 1;
+                        }
+                    }
+                    letter = Math.max(low - 1, 0);
+                    mLetterOfChar.put(c, letter);
+                    return letter;
+                }
+            };
+        }
+    }
+
+    private static final class DateBucketKey extends SectionKey {
+
+        private final int mField;
+        private final DateFormat mLabelFormat;
+
+        DateBucketKey(String columnName, int field, DateFormat labelFormat) {
+            super(columnName);
+            mField = field;
+            mLabelFormat = (DateFormat) labelFormat.clone();
+        }
+
+        @Override
+        protected Scanner newScanner(final int columnIndex) {
+            // DateFormats and Calendars aren't thread safe, so each scanner has its own.
+            final DateFormat labelFormat = (DateFormat) mLabelFormat.clone();
+            final Calendar calendar = (Calendar) labelFormat.getCalendar().clone();
+
+            return new Scanner() {
+                private long mStart; // rows in [mStart, mEnd) are in the current section
+                private long mEnd;
+                private boolean mHasPrevious;
+                private DateSection mSection; // the current section, null until getSection is called
+
+                @Override
+                public boolean startsNewSection(Cursor cursor) {
+                    long value = cursor.getLong(columnIndex);
+                    if (mHasPrevious && value >= mStart && value < mEnd) {
+                        return false;
+                    }
+                    calendar.setTimeInMillis(value);
+                    calendar.set(Calendar.HOUR_OF_DAY, 0);
+                    calendar.set(Calendar.MINUTE, 0);
+                    calendar.set(Calendar.SECOND, 0);
+                    calendar.set(Calendar.MILLISECOND, 0);
+                    if (mField == Calendar.WEEK_OF_YEAR) {
+                        int daysIntoWeek = (calendar.get(Calendar.DAY_OF_WEEK) - calendar.getFirstDayOfWeek() + 7) % 7;
+                        calendar.add(Calendar.DATE, -daysIntoWeek);
+                    } else if (mField == Calendar.MONTH) {
+                        calendar.set(Calendar.DAY_OF_MONTH, 1);
+                    }
+                    mStart = calendar.getTimeInMillis();
+                    calendar.add(mField, 1);
+                    mEnd = calendar.getTimeInMillis();
+                    mHasPrevious = true;
+                    mSection = null;
+                    return true;
+                }
+
+                @Override
+                public Object getSection() {
+                    if (mSection == null) {
+                        mSection = new DateSection(mStart, mEnd, labelFormat.format(new Date(mStart)));
+                    }
+                    return mSection;
+                }
+            };
+        }
+    }
+}
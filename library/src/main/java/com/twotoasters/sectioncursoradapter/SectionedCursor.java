@@ -0,0 +1,39 @@
+package com.twotoasters.sectioncursoradapter;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+/**
+ * A cursor which carries the sections that were built for it, usually by a SectionedCursorLoader.
+ * SectionCursorAdapter uses the sections instead of scanning the cursor again on the main thread.
+ */
+public class SectionedCursor extends CursorWrapper {
+
+    private volatile SectionIndex mSectionIndex;
+
+    /**
+     * @param cursor The cursor to wrap.
+     * @param sections The sections built for cursor. May be null if they have not been built.
+     */
+    public SectionedCursor(Cursor cursor, SectionIndex sections) {
+        super(cursor);
+        mSectionIndex = sections;
+    }
+
+    /**
+     * @return The sections built for this cursor or null if they need to be built.
+     */
+    public SectionIndex getSectionIndex() {
+        return mSectionIndex;
+    }
+
+    /**
+     * The data may change when requerying so the sections are dropped and will be rebuilt.
+     */
+    @Override
+    @Deprecated
+    public boolean requery() {
+        mSectionIndex = null;
+        return super.requery();
+    }
+}
@@ -0,0 +1,136 @@
+package com.twotoasters.sectioncursoradapter;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.support.v4.content.CursorLoader;
+
+/**
+ * A CursorLoader which also builds the sections for the cursor in loadInBackground(), while the
+ * cursor window is already filled. The loaded cursor is a {@link SectionedCursor} which
+ * SectionCursorAdapter swaps in without scanning it again on the main thread.
+ */
+public abstract class SectionedCursorLoader extends CursorLoader {
+
+    private volatile ColumnIndexCache mColumnIndices;
+
+    private final SectionIndex.SectionReader mSectionReader = new SectionIndex.SectionReader() {
+        @Override
+        public Object getSectionFromCursor(Cursor cursor) {
+            return SectionedCursorLoader.this.getSectionFromCursor(cursor);
+        }
+
+        @Override
+        public Object getSubsectionFromCursor(Cursor cursor) {
+            return SectionedCursorLoader.this.getSubsectionFromCursor(cursor);
+        }
+
+        @Override
+        public boolean isCancelled(Cursor cursor) {
+            return cursor.isClosed();
+        }
+    };
+
+    public SectionedCursorLoader(Context context) {
+        super(context);
+    }
+
+    public SectionedCursorLoader(Context context, Uri uri, String[] projection, String selection,
+                                 String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            mColumnIndices = new ColumnIndexCache(cursor);
+            cursor.moveToPosition(-1);
+            return new SectionedCursor(cursor, buildSectionIndex(cursor));
+        } catch (RuntimeException ex) {
+            cursor.close();
+            throw ex;
+        } finally {
+            mColumnIndices = null;
+        }
+    }
+
+    /**
+     * Called on the loader's background thread.
+     * @param cursor a non-null cursor at position -1.
+     * @return the sections for the cursor.
+     */
+    protected SectionIndex buildSectionIndex(Cursor cursor) {
+        SectionIndex.Builder builder = new SectionIndex.Builder(isCursorSortedBySection());
+        SectionKey sectionKey = getSectionKey();
+        SectionKey.Scanner scanner = sectionKey != null ? sectionKey.newScanner(cursor) : null;
+        int idColumn = isItemIdCacheEnabled() ? cursor.getColumnIndex(BaseColumns._ID) : -1;
+        builder.appendRows(cursor, scanner, mSectionReader, idColumn, Integer.MAX_VALUE);
+        return builder.build();
+    }
+
+    /**
+     * Looks up a column's index once per load instead of once per row.
+     * @param cursor the cursor which was passed to getSectionFromCursor.
+     * @param columnName the name of the target column.
+     * @return the zero-based column index for the given column name, or -1 if the column doesn't exist.
+     */
+    protected int getColumnIndex(Cursor cursor, String columnName) {
+        ColumnIndexCache columnIndices = mColumnIndices;
+        if (columnIndices == null || columnIndices.mCursor != cursor) {
+            return cursor.getColumnIndex(columnName);
+        }
+        return columnIndices.getColumnIndex(columnName);
+    }
+
+    /**
+     * Override this and return false if rows of the same section are not next to each other in the cursor.
+     * @return true by default.
+     */
+    protected boolean isCursorSortedBySection() {
+        return true;
+    }
+
+    /**
+     * Override this and return true to capture every row's _id while sections are built, so
+     * SectionCursorAdapter's getItemId never moves the cursor. This costs 8 bytes per row.
+     * @return false by default.
+     */
+    protected boolean isItemIdCacheEnabled() {
+        return false;
+    }
+
+    /**
+     * Override this to read each row's section straight from a column instead of implementing
+     * getSectionFromCursor.
+     * @return the key to build sections with, or null to call getSectionFromCursor for every row.
+     */
+    protected SectionKey getSectionKey() {
+        return null;
+    }
+
+    /**
+     * The object which is return will determine what section this cursor position will be in.
+     * This is called on the loader's background thread. It is not called when getSectionKey returns a key,
+     * so it may then just return null.
+     * @param cursor
+     * @return the section from the cursor at its current position.
+     * This object will be passed to newSectionView and bindSectionView.
+     */
+    protected abstract Object getSectionFromCursor(Cursor cursor);
+
+    /**
+     * Override this to group the rows of each section into subsections, as with SectionCursorAdapter's
+     * method of the same name. This is called on the loader's background thread.
+     * @param cursor
+     * @return the subsection from the cursor at its current position, or null if the row has none.
+     * null by default.
+     */
+    protected Object getSubsectionFromCursor(Cursor cursor) {
+        return null;
+    }
+}
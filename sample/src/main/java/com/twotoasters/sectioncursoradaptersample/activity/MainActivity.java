@@ -5,17 +5,15 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.LoaderManager.LoaderCallbacks;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v7.app.ActionBarActivity;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.ListView;
 
-import com.activeandroid.content.ContentProvider;
 import com.twotoasters.sectioncursoradaptersample.R;
 import com.twotoasters.sectioncursoradaptersample.adapter.ToastersAdapter;
-import com.twotoasters.sectioncursoradaptersample.database.ToasterModel;
+import com.twotoasters.sectioncursoradaptersample.loader.ToastersLoader;
 
 
 public class MainActivity extends ActionBarActivity implements LoaderCallbacks<Cursor> {
@@ -35,7 +33,6 @@ public class MainActivity extends ActionBarActivity implements LoaderCallbacks<C
         getSupportLoaderManager().initLoader(0, null, this);
     }
 
-
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main, menu);
@@ -59,11 +56,12 @@ public class MainActivity extends ActionBarActivity implements LoaderCallbacks<C
 
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        String orderBy = ToasterModel.SHORT_JOB + " ASC, " + ToasterModel.NAME + " ASC";
-        return new CursorLoader(this, ContentProvider.createUri(ToasterModel.class, null), null, null, null, orderBy);
+        // The loader builds the sections in the background so the adapter doesn't have to.
+        return new ToastersLoader(this);
     }
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        // The cursor already carries its sections, so swapping it in doesn't scan it.
         mAdapter.swapCursor(data);
     }
 
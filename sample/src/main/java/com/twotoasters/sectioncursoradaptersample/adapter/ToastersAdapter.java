@@ -12,12 +12,15 @@ import android.widget.ViewSwitcher;
 
 import com.squareup.picasso.Picasso;
 import com.twotoasters.sectioncursoradapter.SectionCursorAdapter;
+import com.twotoasters.sectioncursoradapter.SectionKey;
 import com.twotoasters.sectioncursoradaptersample.R;
 import com.twotoasters.sectioncursoradaptersample.database.ToasterModel;
 import com.twotoasters.sectioncursoradaptersample.transformation.SquareTransformation;
 
 public class ToastersAdapter extends SectionCursorAdapter {
 
+    public static final SectionKey SECTION_KEY = SectionKey.stringValue(ToasterModel.SHORT_JOB);
+
     private final SquareTransformation mToasterTrans;
     private final SquareTransformation mHumanTrans;
 
@@ -28,11 +31,14 @@ public class ToastersAdapter extends SectionCursorAdapter {
         mHumanTrans = new SquareTransformation(false);
     }
 
+    @Override
+    protected SectionKey getSectionKey() {
+        return SECTION_KEY;
+    }
+
     @Override
     protected Object getSectionFromCursor(Cursor cursor) {
-        final ToasterModel toaster = new ToasterModel();
-        toaster.loadFromCursor(cursor);
-        return toaster.shortJob;
+        return cursor.getString(getColumnIndex(cursor, ToasterModel.SHORT_JOB));
     }
 
     @Override
@@ -56,17 +62,16 @@ public class ToastersAdapter extends SectionCursorAdapter {
 
     @Override
     protected void bindItemView(View convertView, Context context, Cursor cursor) {
-        final ToasterModel toaster = new ToasterModel();
-        toaster.loadFromCursor(cursor);
+        final String imageUrl = cursor.getString(getColumnIndex(cursor, ToasterModel.IMAGE_URL));
 
         final ViewHolder holder = (ViewHolder) convertView.getTag();
-        holder.txtName.setText(toaster.name);
-        holder.txtJob.setText(toaster.jobDescription);
+        holder.txtName.setText(cursor.getString(getColumnIndex(cursor, ToasterModel.NAME)));
+        holder.txtJob.setText(cursor.getString(getColumnIndex(cursor, ToasterModel.JOB_DESCRIPTION)));
 
-        Picasso.with(context).load(toaster.imageUrl)
+        Picasso.with(context).load(imageUrl)
                 .error(R.drawable.toaster_backup).transform(mToasterTrans)
                 .into(holder.imgToaster);
-        Picasso.with(context).load(toaster.imageUrl)
+        Picasso.with(context).load(imageUrl)
                 .error(R.drawable.toaster_backup).transform(mHumanTrans)
                 .into(holder.imgHuman);
         // Reseting the view our switcher is showing.
@@ -0,0 +1,29 @@
+package com.twotoasters.sectioncursoradaptersample.loader;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.activeandroid.content.ContentProvider;
+import com.twotoasters.sectioncursoradapter.SectionKey;
+import com.twotoasters.sectioncursoradapter.SectionedCursorLoader;
+import com.twotoasters.sectioncursoradaptersample.adapter.ToastersAdapter;
+import com.twotoasters.sectioncursoradaptersample.database.ToasterModel;
+
+public class ToastersLoader extends SectionedCursorLoader {
+
+    private static final String ORDER_BY = ToasterModel.SHORT_JOB + " ASC, " + ToasterModel.NAME + " ASC";
+
+    public ToastersLoader(Context context) {
+        super(context, ContentProvider.createUri(ToasterModel.class, null), null, null, null, ORDER_BY);
+    }
+
+    @Override
+    protected SectionKey getSectionKey() {
+        return ToastersAdapter.SECTION_KEY;
+    }
+
+    @Override
+    protected Object getSectionFromCursor(Cursor cursor) {
+        return cursor.getString(getColumnIndex(cursor, ToasterModel.SHORT_JOB));
+    }
+}
@@ -0,0 +1,135 @@
+package com.twotoasters.sectioncursoradaptersample.adapter;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.ListView;
+
+import com.twotoasters.sectioncursoradapter.PinnedSectionHeader;
+import com.twotoasters.sectioncursoradapter.SectionCursorAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class PinnedSectionHeaderTest {
+
+    private Context context;
+    private ListView listView;
+    private FrameLayout container;
+    private HeaderAdapter adapter;
+    private PinnedSectionHeader pinnedHeader;
+
+    @Before
+    public void setUp() {
+        context = Robolectric.application;
+        MatrixCursor cursor = new MatrixCursor(new String[] {"section"});
+        for (String section : new String[] {"A", "A", "B", "C"}) {
+            cursor.addRow(new Object[] {section});
+        }
+        adapter = new HeaderAdapter(context, cursor); // A at 0, B at 3, C at 5
+        listView = new ListView(context);
+        container = new FrameLayout(context);
+        pinnedHeader = new PinnedSectionHeader(adapter, container);
+    }
+
+    @Test
+    public void itShouldOnlyBindWhenTheFirstVisibleSectionChanges() {
+        pinnedHeader.onScroll(listView, 0, 3, 7);
+        pinnedHeader.onScroll(listView, 2, 3, 7);
+        pinnedHeader.onScroll(listView, 3, 3, 7);
+        pinnedHeader.onScroll(listView, 4, 3, 7);
+        pinnedHeader.onScroll(listView, 6, 1, 7);
+        pinnedHeader.onScroll(listView, 1, 3, 7);
+
+        assertThat(adapter.bound).containsExactly("A@0", "B@3", "C@5", "A@0");
+        assertThat(adapter.sectionViewsCreated).isEqualTo(1);
+        assertThat(container.getChildCount()).isEqualTo(1);
+        assertThat(pinnedHeader.getHeaderView().getVisibility()).isEqualTo(View.VISIBLE);
+    }
+
+    @Test
+    public void itShouldRebindWhenSectionsAreRebuilt() {
+        pinnedHeader.onScroll(listView, 4, 3, 7);
+
+        MatrixCursor cursor = new MatrixCursor(new String[] {"section"});
+        cursor.addRow(new Object[] {"D"});
+        cursor.addRow(new Object[] {"D"});
+        adapter.swapCursor(cursor);
+        pinnedHeader.onScroll(listView, 1, 2, 3);
+
+        assertThat(adapter.bound).containsExactly("B@3", "D@0");
+    }
+
+    @Test
+    public void itShouldSkipTheListsHeaderViews() {
+        listView.addHeaderView(new View(context));
+        pinnedHeader.onScroll(listView, 0, 3, 8);
+        assertThat(pinnedHeader.getHeaderView()).isNull();
+
+        pinnedHeader.onScroll(listView, 1, 3, 8);
+        pinnedHeader.onScroll(listView, 3, 3, 8);
+        pinnedHeader.onScroll(listView, 4, 3, 8);
+        assertThat(adapter.bound).containsExactly("A@0", "B@3");
+        assertThat(pinnedHeader.getHeaderView().getVisibility()).isEqualTo(View.VISIBLE);
+
+        pinnedHeader.onScroll(listView, 0, 3, 8);
+        assertThat(pinnedHeader.getHeaderView().getVisibility()).isEqualTo(View.GONE);
+    }
+
+    @Test
+    public void itShouldHideWithoutSections() {
+        pinnedHeader.onScroll(listView, 0, 3, 7);
+        adapter.swapCursor(null);
+        pinnedHeader.onScroll(listView, 0, 0, 0);
+
+        assertThat(pinnedHeader.getHeaderView().getVisibility()).isEqualTo(View.GONE);
+    }
+
+    private static class HeaderAdapter extends SectionCursorAdapter {
+
+        public final List<String> bound = new ArrayList<String>();
+        public int sectionViewsCreated;
+
+        private HeaderAdapter(Context context, Cursor cursor) {
+            super(context, cursor, 0);
+        }
+
+        @Override
+        protected Object getSectionFromCursor(Cursor cursor) {
+            return cursor.getString(0);
+        }
+
+        @Override
+        protected View newSectionView(Context context, Object item, ViewGroup parent) {
+            sectionViewsCreated++;
+            return new View(context);
+        }
+
+        @Override
+        protected void bindSectionView(View convertView, Context context, int position, Object item) {
+            bound.add(item + "@" + position);
+        }
+
+        @Override
+        protected View newItemView(Context context, Cursor cursor, ViewGroup parent) {
+            return new View(context);
+        }
+
+        @Override
+        protected void bindItemView(View convertView, Context context, Cursor cursor) {
+
+        }
+    }
+}
@@ -2,11 +2,19 @@ package com.twotoasters.sectioncursoradaptersample.adapter;
 
 import android.content.Context;
 import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.os.Bundle;
+import android.os.Parcel;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.LinearLayout;
+import android.widget.ListView;
 
+import com.twotoasters.sectioncursoradapter.PerformanceStats;
 import com.twotoasters.sectioncursoradapter.SectionCursorAdapter;
+import com.twotoasters.sectioncursoradapter.SectionIndex;
+import com.twotoasters.sectioncursoradapter.SectionKey;
+import com.twotoasters.sectioncursoradapter.SectionedCursor;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -16,13 +24,23 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.SortedMap;
+import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.concurrent.Executor;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyObject;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
@@ -167,6 +185,533 @@ public class SectionCursorAdapterTest {
         assertThat(adapter.getCursorPositionWithoutSections(2)).isEqualTo(2);
     }
 
+    @Test
+    public void itShouldSwapInCursorAfterAsyncSectionBuild() {
+        Cursor newCursor = mock(Cursor.class);
+        when(newCursor.getCount()).thenReturn(10);
+        adapter.sections = new TreeMap<Integer, Object>(SECTION_MAP);
+        adapter.setSectionBuildExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        adapter.swapCursorAsync(newCursor);
+        assertThat(adapter.getCursor()).isSameAs(newCursor);
+        assertThat(adapter.isSection(3)).isTrue();
+        assertThat(adapter.getCount()).isEqualTo(13);
+    }
+
+    @Test
+    public void itShouldNotSwapInCancelledAsyncSectionBuild() {
+        Cursor newCursor = mock(Cursor.class);
+        final Runnable[] pending = new Runnable[1];
+        adapter.setSectionBuildExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pending[0] = command;
+            }
+        });
+
+        adapter.swapCursorAsync(newCursor);
+        assertThat(adapter.getCursor()).isSameAs(cursor);
+        adapter.swapCursor(null);
+        pending[0].run();
+        assertThat(adapter.getCursor()).isNull();
+    }
+
+    @Test
+    public void itShouldKeepShowingAClosedCursorUntilTheAsyncBuildIsDelivered() {
+        MatrixCursor oldCursor = newSectionCursor("A", "A", "B");
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, oldCursor);
+        final Runnable[] pending = new Runnable[1];
+        columnAdapter.setSectionBuildExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pending[0] = command;
+            }
+        });
+        ViewGroup parent = new LinearLayout(context);
+        View convertView = new View(context);
+
+        MatrixCursor newCursor = newSectionCursor("A", "B", "C", "C");
+        columnAdapter.swapCursorAsync(newCursor);
+        oldCursor.close(); // as a loader does once onLoadFinished returns
+        assertThat(columnAdapter.getCursor()).isSameAs(oldCursor);
+        assertThat(columnAdapter.getCount()).isEqualTo(5);
+        assertThat(columnAdapter.getView(1, convertView, parent)).isSameAs(convertView);
+
+        pending[0].run();
+        assertThat(columnAdapter.getCursor()).isSameAs(newCursor);
+        assertThat(columnAdapter.getCount()).isEqualTo(7);
+    }
+
+    @Test
+    public void itShouldDropAnAsyncBuildWhenItsCursorIsClosedWhileBeingRead() {
+        MatrixCursor oldCursor = newSectionCursor("A", "A", "B");
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, oldCursor);
+        final Runnable[] pending = new Runnable[1];
+        columnAdapter.setSectionBuildExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pending[0] = command;
+            }
+        });
+        MatrixCursor newCursor = new MatrixCursor(new String[] {"section"}) {
+            @Override
+            public String getString(int column) {
+                if (getPosition() == 1) {
+                    close(); // as a loader does after the check for a closed cursor
+                    throw new IllegalStateException("closed");
+                }
+                return super.getString(column);
+            }
+        };
+        newCursor.addRow(new Object[] {"A"});
+        newCursor.addRow(new Object[] {"B"});
+
+        columnAdapter.swapCursorAsync(newCursor);
+        pending[0].run();
+        assertThat(columnAdapter.getCursor()).isSameAs(oldCursor);
+        assertThat(columnAdapter.getCount()).isEqualTo(5);
+    }
+
+    @Test
+    public void itShouldUseSectionsPrebuiltForSectionedCursor() {
+        Cursor newCursor = new SectionedCursor(cursor, SectionIndex.fromSortedMap(SECTION_MAP_ALT));
+        adapter.sections = new TreeMap<Integer, Object>(SECTION_MAP);
+
+        adapter.swapCursor(newCursor);
+        assertThat(adapter.isSection(0)).isFalse();
+        assertThat(adapter.isSection(2)).isTrue();
+        assertThat(adapter.getCursorPositionWithoutSections(3)).isEqualTo(2);
+    }
+
+    @Test
+    public void itShouldBuildSectionsFromSectionCounts() {
+        MatrixCursor counts = new MatrixCursor(new String[] {"section", "count"});
+        counts.addRow(new Object[] {"A", 2});
+        counts.addRow(new Object[] {"B", 0});
+        counts.addRow(new Object[] {"C", 8});
+
+        adapter.swapCursorWithSectionCounts(cursor, counts);
+        assertThat(adapter.getCount()).isEqualTo(12);
+        assertThat(adapter.isSection(0)).isTrue();
+        assertThat(adapter.isSection(3)).isTrue();
+        assertThat(adapter.getItem(3)).isEqualTo("C");
+        assertThat(adapter.getCursorPositionWithoutSections(4)).isEqualTo(2);
+    }
+
+    @Test
+    public void itShouldScanCursorWhenSectionCountsDoNotMatch() {
+        MatrixCursor counts = new MatrixCursor(new String[] {"section", "count"});
+        counts.addRow(new Object[] {"A", 3});
+        adapter.sections = new TreeMap<Integer, Object>(SECTION_MAP);
+
+        adapter.swapCursorWithSectionCounts(mock(Cursor.class), counts);
+        assertThat(adapter.getPositionForSection(1)).isEqualTo(3);
+    }
+
+    @Test
+    public void itShouldOnlyScanAppendedRows() {
+        MatrixCursor firstPage = new MatrixCursor(new String[] {"section"});
+        MatrixCursor secondPage = new MatrixCursor(new String[] {"section"});
+        for (String section : new String[] {"A", "A", "B"}) {
+            firstPage.addRow(new Object[] {section});
+            secondPage.addRow(new Object[] {section});
+        }
+        for (String section : new String[] {"B", "C"}) {
+            secondPage.addRow(new Object[] {section});
+        }
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, firstPage);
+        columnAdapter.rowsOnlyAppended = true;
+
+        columnAdapter.sectionsRead = 0;
+        columnAdapter.swapCursor(secondPage);
+        assertThat(columnAdapter.sectionsRead).isEqualTo(2);
+        assertThat(columnAdapter.getCount()).isEqualTo(8);
+        assertThat(columnAdapter.getPositionForSection(1)).isEqualTo(3);
+        assertThat(columnAdapter.getPositionForSection(2)).isEqualTo(6);
+    }
+
+    @Test
+    public void itShouldBuildSectionsFromSectionKey() {
+        MatrixCursor names = new MatrixCursor(new String[] {"name"});
+        for (String name : new String[] {"apple", "Avocado", "banana", "Blueberry", "cherry"}) {
+            names.addRow(new Object[] {name});
+        }
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, null);
+        columnAdapter.sectionKey = SectionKey.stringPrefix("name", 1, true);
+
+        columnAdapter.swapCursor(names);
+        assertThat(columnAdapter.sectionsRead).isEqualTo(0);
+        assertThat(columnAdapter.getCount()).isEqualTo(8);
+        assertThat(columnAdapter.getItem(0)).isEqualTo("A");
+        assertThat(columnAdapter.getItem(3)).isEqualTo("B");
+        assertThat(columnAdapter.getItem(6)).isEqualTo("C");
+    }
+
+    @Test
+    public void itShouldGroupByCollatedFirstLetter() {
+        MatrixCursor names = new MatrixCursor(new String[] {"name"});
+        for (String name : new String[] {"42nd Street", "\u00c1bel", "adam", "Bob", "\u00e9mile", "zed"}) {
+            names.addRow(new Object[] {name});
+        }
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, null);
+        columnAdapter.sectionKey = SectionKey.firstLetter("name", "#ABCDEFGHIJKLMNOPQRSTUVWXYZ", Locale.ENGLISH);
+
+        columnAdapter.swapCursor(names);
+        assertThat(columnAdapter.sectionsRead).isEqualTo(0);
+        assertThat(columnAdapter.getCount()).isEqualTo(11);
+        assertThat(columnAdapter.getSections()).containsExactly("#", "A", "B", "E", "Z");
+        assertThat(columnAdapter.getPositionForSection(3)).isEqualTo(7);
+    }
+
+    @Test
+    public void itShouldGroupTimestampsByDayAndMonth() {
+        MatrixCursor events = new MatrixCursor(new String[] {"time"});
+        events.addRow(new Object[] {1399629600000L}); // 2014-05-09 10:00 UTC
+        events.addRow(new Object[] {1399676400000L}); // 2014-05-09 23:00 UTC
+        events.addRow(new Object[] {1399683600000L}); // 2014-05-10 01:00 UTC
+        SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        dayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, null);
+        columnAdapter.sectionKey = SectionKey.dateBucket("time", Calendar.DATE, dayFormat);
+
+        columnAdapter.swapCursor(events);
+        assertThat(columnAdapter.getCount()).isEqualTo(5);
+        assertThat(columnAdapter.getItem(0).toString()).isEqualTo("2014-05-09");
+        assertThat(columnAdapter.getItem(3).toString()).isEqualTo("2014-05-10");
+        assertThat(((SectionKey.DateSection) columnAdapter.getItem(0)).getStartMillis()).isEqualTo(1399593600000L);
+
+        columnAdapter.sectionKey = SectionKey.dateBucket("time", Calendar.MONTH, dayFormat);
+        columnAdapter.notifyDataSetChanged();
+        assertThat(columnAdapter.getCount()).isEqualTo(4);
+        assertThat(columnAdapter.getItem(0).toString()).isEqualTo("2014-05-01");
+    }
+
+    @Test
+    public void itShouldReadADateBucketsSectionOncePerBucket() {
+        MatrixCursor events = new MatrixCursor(new String[] {"time"});
+        events.addRow(new Object[] {1399629600000L}); // 2014-05-09 10:00 UTC
+        events.addRow(new Object[] {1399676400000L}); // 2014-05-09 23:00 UTC
+        events.addRow(new Object[] {1399683600000L}); // 2014-05-10 01:00 UTC
+        SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        dayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        SectionKey.Scanner scanner = SectionKey.dateBucket("time", Calendar.DATE, dayFormat).newScanner(events);
+
+        events.moveToNext();
+        scanner.startsNewSection(events);
+        Object first = scanner.getSection();
+        events.moveToNext();
+        scanner.startsNewSection(events);
+        assertThat(scanner.getSection()).isSameAs(first);
+        events.moveToNext();
+        scanner.startsNewSection(events);
+        assertThat(scanner.getSection()).isNotEqualTo(first);
+        assertThat(scanner.getSection().toString()).isEqualTo("2014-05-10");
+    }
+
+    @Test
+    public void itShouldWriteDateSectionsToAParcel() {
+        MatrixCursor events = new MatrixCursor(new String[] {"time"});
+        events.addRow(new Object[] {1399629600000L}); // 2014-05-09 10:00 UTC
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, null);
+        columnAdapter.sectionKey = SectionKey.dateBucket("time", Calendar.DATE,
+                new SimpleDateFormat("yyyy-MM-dd", Locale.US));
+        columnAdapter.swapCursor(events);
+
+        Parcel parcel = Parcel.obtain();
+        parcel.writeValue(columnAdapter.getItem(0));
+        parcel.setDataPosition(0);
+        Object section = parcel.readValue(SectionKey.class.getClassLoader());
+        parcel.recycle();
+
+        assertThat(section).isEqualTo(columnAdapter.getItem(0));
+        assertThat(section.toString()).isEqualTo(columnAdapter.getItem(0).toString());
+    }
+
+    @Test
+    public void itShouldBuildSectionsLazilyInChunks() {
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, null);
+        columnAdapter.chunkSize = 2;
+
+        Robolectric.pauseMainLooper();
+        columnAdapter.swapCursor(newSectionCursor("A", "A", "B", "B", "C", "C"));
+        assertThat(columnAdapter.sectionsRead).isEqualTo(2);
+        assertThat(columnAdapter.getCount()).isEqualTo(7);
+        assertThat(columnAdapter.getCursorPositionWithoutSections(3)).isEqualTo(2);
+
+        Robolectric.runUiThreadTasks();
+        assertThat(columnAdapter.sectionsRead).isEqualTo(2);
+
+        columnAdapter.getView(3, null, new LinearLayout(context));
+        Robolectric.runUiThreadTasks();
+        assertThat(columnAdapter.sectionsRead).isEqualTo(5);
+        assertThat(columnAdapter.getCount()).isEqualTo(9);
+        assertThat(columnAdapter.getPositionForSection(2)).isEqualTo(6);
+
+        columnAdapter.getView(8, null, new LinearLayout(context));
+        Robolectric.runUiThreadTasks();
+        assertThat(columnAdapter.sectionsRead).isEqualTo(6);
+        assertThat(columnAdapter.getCount()).isEqualTo(9);
+        Robolectric.unPauseMainLooper();
+    }
+
+    @Test
+    public void itShouldOnlyScanLazilyWhenTheFastScrollerShowsRowsPastTheScannedOnes() {
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, null);
+        columnAdapter.chunkSize = 2;
+
+        Robolectric.pauseMainLooper();
+        columnAdapter.swapCursor(newSectionCursor("A", "A", "B", "B", "C", "C"));
+        assertThat(columnAdapter.getPositionForSection(0)).isEqualTo(0);
+        assertThat(columnAdapter.getPositionForSection(1)).isEqualTo(7);
+        assertThat(columnAdapter.sectionsRead).isEqualTo(2);
+
+        columnAdapter.getView(6, null, new LinearLayout(context)); // the fast scroller dragged to the last row
+        Robolectric.runUiThreadTasks();
+        assertThat(columnAdapter.sectionsRead).isEqualTo(6);
+        assertThat(columnAdapter.getSections()).hasSize(3);
+        Robolectric.unPauseMainLooper();
+    }
+
+    @Test
+    public void itShouldPrefetchRowsAfterJumpsAndAheadOfScrolling() {
+        ColumnAdapter columnAdapter = new ColumnAdapter(context,
+                newSectionCursor("A", "A", "A", "B", "B", "B", "B", "B"));
+        columnAdapter.prefetchDistance = 3;
+
+        assertThat(columnAdapter.getPositionForSection(1)).isEqualTo(4);
+        assertThat(columnAdapter.getPositionForSection(2)).isEqualTo(10);
+        assertThat(columnAdapter.prefetched).isEmpty();
+
+        columnAdapter.getView(5, null, new LinearLayout(context)); // jumped to the first B row
+        assertThat(columnAdapter.prefetched).containsExactly("4-7");
+
+        columnAdapter.getView(6, null, new LinearLayout(context));
+        columnAdapter.getView(6, null, new LinearLayout(context));
+        assertThat(columnAdapter.prefetched).containsExactly("4-7", "7-8");
+
+        columnAdapter.getView(5, null, new LinearLayout(context));
+        assertThat(columnAdapter.prefetched).containsExactly("4-7", "7-8", "0-3");
+    }
+
+    @Test
+    public void itShouldTreatTheFirstRowBoundAfterASwapAsAJump() {
+        ColumnAdapter columnAdapter = new ColumnAdapter(context,
+                newSectionCursor("A", "A", "A", "B", "B", "B", "B", "B"));
+        columnAdapter.prefetchDistance = 3;
+        columnAdapter.getView(6, null, new LinearLayout(context));
+        columnAdapter.prefetched.clear();
+
+        columnAdapter.swapCursor(newSectionCursor("A", "A", "A", "B", "B", "B", "B", "B"));
+        columnAdapter.getView(5, null, new LinearLayout(context));
+        assertThat(columnAdapter.prefetched).containsExactly("4-7");
+    }
+
+    @Test
+    public void itShouldReportTimingsToPerformanceListener() {
+        PerformanceStats stats = new PerformanceStats();
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, null);
+        columnAdapter.setPerformanceListener(stats);
+
+        columnAdapter.swapCursor(newSectionCursor("A", "A", "B"));
+        assertThat(stats.getBuildCount()).isEqualTo(1);
+
+        View view = columnAdapter.getView(1, null, new LinearLayout(context));
+        columnAdapter.getView(2, view, new LinearLayout(context));
+        assertThat(stats.getViewCount()).isEqualTo(2);
+        assertThat(stats.getReuseRatio()).isEqualTo(0.5f);
+    }
+
+    @Test
+    public void itShouldAnswerItemIdsFromIdsCapturedWhileBuilding() {
+        MatrixCursor rows = new MatrixCursor(new String[] {"section", "_id"});
+        rows.addRow(new Object[] {"A", 7L});
+        rows.addRow(new Object[] {"B", 5L});
+        rows.addRow(new Object[] {"B", 9L});
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, null);
+        columnAdapter.itemIdCacheEnabled = true;
+
+        columnAdapter.swapCursor(rows);
+        int cursorPosition = rows.getPosition();
+        assertThat(columnAdapter.getSectionIndex().getRowIdCount()).isEqualTo(3);
+        assertThat(columnAdapter.getItemId(1)).isEqualTo(7L);
+        assertThat(columnAdapter.getItemId(4)).isEqualTo(9L);
+        assertThat(rows.getPosition()).isEqualTo(cursorPosition);
+    }
+
+    @Test
+    public void itShouldKeepSectionIdsWhenRowsAreInsertedBeforeThem() {
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, newSectionCursor("A", "A", "B"));
+        long sectionId = columnAdapter.getItemId(3);
+
+        columnAdapter.swapCursor(newSectionCursor("A", "A", "A", "B"));
+        assertThat(columnAdapter.getItemId(4)).isEqualTo(sectionId);
+        assertThat(columnAdapter.getItemId(0)).isNotEqualTo(sectionId).isLessThan(0);
+    }
+
+    @Test
+    public void itShouldAddSubsectionHeadersAndFastScrollByThem() {
+        MatrixCursor rows = new MatrixCursor(new String[] {"section", "city"});
+        rows.addRow(new Object[] {"FR", "PAR"});
+        rows.addRow(new Object[] {"FR", "LYS"});
+        rows.addRow(new Object[] {"US", "BOS"});
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, null);
+        columnAdapter.subsectionColumn = 1;
+        columnAdapter.fastScrollLevel = SectionIndex.LEVEL_SUBSECTION;
+        columnAdapter.swapCursor(rows);
+
+        assertThat(columnAdapter.getCount()).isEqualTo(8);
+        assertThat(columnAdapter.getItemViewType(5)).isEqualTo(ColumnAdapter.SECTION);
+        assertThat(columnAdapter.getItemViewType(6)).isEqualTo(ColumnAdapter.SUBSECTION);
+        assertThat(columnAdapter.getItemViewType(7)).isEqualTo(ColumnAdapter.ITEM);
+        assertThat(columnAdapter.getCursorPositionWithoutSections(4)).isEqualTo(1);
+
+        assertThat(columnAdapter.getSections()).containsExactly("PAR", "LYS", "BOS");
+        assertThat(columnAdapter.getPositionForSection(2)).isEqualTo(6);
+        assertThat(columnAdapter.getSectionForPosition(4)).isEqualTo(1);
+    }
+
+    @Test
+    public void itShouldOnlyAddASubsectionViewTypeWhenSubsectionsAreOverridden() {
+        assertThat(new ColumnAdapter(context, null).getViewTypeCount()).isEqualTo(3);
+
+        TestAdapter plainAdapter = new TestAdapter(context, null, 0);
+        plainAdapter.swapCursor(newSectionCursor("A", "A"),
+                new SectionIndex.Builder(true).appendRow("A", "x").appendRow("A", "x").build());
+        assertThat(plainAdapter.getViewTypeCount()).isEqualTo(2);
+        assertThat(plainAdapter.getCount()).isEqualTo(4);
+        assertThat(plainAdapter.getItemViewType(1)).isEqualTo(ColumnAdapter.SECTION);
+    }
+
+    @Test
+    public void itShouldSkipBindingAHeaderViewHandedBackForTheSameSection() {
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, newSectionCursor("A", "B", "C"));
+        columnAdapter.sectionViewCacheSize = 2;
+        ViewGroup parent = new LinearLayout(context);
+
+        View first = columnAdapter.getView(0, null, parent);
+        assertThat(columnAdapter.getView(0, first, parent)).isSameAs(first);
+        assertThat(columnAdapter.getView(0, null, parent)).isNotSameAs(first);
+        assertThat(columnAdapter.sectionBinds).isEqualTo(2);
+        assertThat(columnAdapter.getItemViewType(0)).isEqualTo(ColumnAdapter.SECTION);
+
+        assertThat(columnAdapter.getView(2, first, parent)).isSameAs(first);
+        assertThat(first.getTag()).isEqualTo("B");
+        columnAdapter.getView(0, first, parent);
+        assertThat(columnAdapter.sectionBinds).isEqualTo(4);
+        assertThat(first.getTag()).isEqualTo("A");
+
+        columnAdapter.notifyDataSetChanged();
+        columnAdapter.getView(0, first, parent);
+        assertThat(columnAdapter.sectionBinds).isEqualTo(5);
+    }
+
+    @Test
+    public void itShouldKeepHeadersBoundForTheirSectionWhileAListScrollsPastTheCacheAndBack() {
+        ColumnAdapter columnAdapter = new ColumnAdapter(context,
+                newSectionCursor("A", "B", "C", "D", "E", "F", "G", "H", "I", "J", "K", "L"));
+        columnAdapter.sectionViewCacheSize = 2;
+        columnAdapter.viewHeight = 10;
+        ListView listView = new ListView(context);
+        listView.setAdapter(columnAdapter);
+        layOut(listView);
+
+        for (int position = 0; position < columnAdapter.getCount(); position += 3) {
+            listView.setSelection(position);
+            layOut(listView);
+            assertHeadersAreBoundForTheirSections(listView, columnAdapter);
+        }
+        for (int position = columnAdapter.getCount() - 1; position >= 0; position -= 2) {
+            listView.setSelection(position);
+            layOut(listView);
+            assertHeadersAreBoundForTheirSections(listView, columnAdapter);
+        }
+    }
+
+    private static void layOut(ListView listView) {
+        listView.measure(View.MeasureSpec.makeMeasureSpec(100, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(50, View.MeasureSpec.EXACTLY));
+        listView.layout(0, 0, 100, 50);
+    }
+
+    private static void assertHeadersAreBoundForTheirSections(ListView listView, ColumnAdapter columnAdapter) {
+        Set<View> children = new HashSet<View>();
+        for (int i = 0; i < listView.getChildCount(); i++) {
+            View child = listView.getChildAt(i);
+            int position = listView.getFirstVisiblePosition() + i;
+            assertThat(children.add(child)).isTrue();
+            assertThat(child.getParent()).isSameAs(listView);
+            if (columnAdapter.getItemViewType(position) == ColumnAdapter.SECTION) {
+                assertThat(child.getTag()).isEqualTo(columnAdapter.getItem(position));
+            }
+        }
+    }
+
+    @Test
+    public void itShouldCountTheRowsOfEachSection() {
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, newSectionCursor("A", "A", "B"));
+
+        assertThat(columnAdapter.getSectionCount()).isEqualTo(2);
+        assertThat(columnAdapter.getSectionItemCount(0)).isEqualTo(2);
+        assertThat(columnAdapter.getSectionCursorRange(1)).isEqualTo(new int[] {2, 3});
+    }
+
+    @Test
+    public void itShouldRestoreSavedSectionsForACursorWithTheSameToken() {
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, newSectionCursor("A", "A", "B"));
+        columnAdapter.sectionIndexToken = "stores:1";
+        Bundle state = new Bundle();
+        columnAdapter.onSaveInstanceState(state);
+
+        ColumnAdapter restoredAdapter = new ColumnAdapter(context, null);
+        restoredAdapter.sectionIndexToken = "stores:1";
+        restoredAdapter.onRestoreInstanceState(state);
+        restoredAdapter.swapCursor(newSectionCursor("A", "A", "B"));
+
+        assertThat(restoredAdapter.sectionsRead).isEqualTo(0);
+        assertThat(restoredAdapter.getSectionIndex().toSortedMap())
+                .isEqualTo(columnAdapter.getSectionIndex().toSortedMap());
+    }
+
+    @Test
+    public void itShouldScanTheCursorWhenTheTokenChanged() {
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, newSectionCursor("A", "A", "B"));
+        columnAdapter.sectionIndexToken = "stores:1";
+        Bundle state = new Bundle();
+        columnAdapter.onSaveInstanceState(state);
+
+        ColumnAdapter restoredAdapter = new ColumnAdapter(context, null);
+        restoredAdapter.sectionIndexToken = "stores:2";
+        restoredAdapter.onRestoreInstanceState(state);
+        restoredAdapter.swapCursor(newSectionCursor("A", "B", "B"));
+
+        assertThat(restoredAdapter.sectionsRead).isEqualTo(3);
+        assertThat(restoredAdapter.getPositionForSection(1)).isEqualTo(2);
+    }
+
+    @Test
+    public void itShouldNotSaveSectionsLargerThanTheLimit() {
+        ColumnAdapter columnAdapter = new ColumnAdapter(context, newSectionCursor("A", "A", "B"));
+        columnAdapter.sectionIndexToken = "stores:1";
+        columnAdapter.maxSavedSectionsSize = 16;
+        Bundle state = new Bundle();
+        columnAdapter.onSaveInstanceState(state);
+
+        assertThat(state.isEmpty()).isTrue();
+    }
+
+    private static MatrixCursor newSectionCursor(String... sections) {
+        MatrixCursor cursor = new MatrixCursor(new String[] {"section"});
+        for (String section : sections) {
+            cursor.addRow(new Object[] {section});
+        }
+        return cursor;
+    }
+
     // ********** Fast Scroll SectionIndexer Tests **********/
 
     @Test
@@ -226,6 +771,20 @@ public class SectionCursorAdapterTest {
         assertThat(fastScrollObjects[2]).isEqualTo("C");
     }
 
+    @Test
+    public void itShouldReuseFastScrollSectionsWhileSectionValuesAreUnchanged() {
+        adapter.setSections(new TreeMap<Integer, Object>(SECTION_MAP));
+        Object[] fastScrollObjects = adapter.getSections();
+
+        adapter.setSections(new TreeMap<Integer, Object>(SECTION_MAP_ALT));
+        assertThat(adapter.getSections()).isSameAs(fastScrollObjects);
+
+        TreeMap<Integer, Object> sections = new TreeMap<Integer, Object>(SECTION_MAP);
+        sections.put(8, "D");
+        adapter.setSections(sections);
+        assertThat(adapter.getSections()).isNotSameAs(fastScrollObjects).hasSize(4);
+    }
+
     private static class TestAdapter extends SectionCursorAdapter {
 
         public SortedMap<Integer, Object> sections;
@@ -269,4 +828,116 @@ public class SectionCursorAdapterTest {
             notifyDataSetChanged();
         }
     }
-}
\ No newline at end of file
+
+    private static class ColumnAdapter extends SectionCursorAdapter {
+
+        static final int SECTION = VIEW_TYPE_SECTION;
+        static final int SUBSECTION = VIEW_TYPE_SUBSECTION;
+        static final int ITEM = VIEW_TYPE_ITEM;
+
+        public boolean rowsOnlyAppended;
+        public SectionKey sectionKey;
+        public int sectionsRead;
+        public int chunkSize;
+        public int prefetchDistance;
+        public boolean itemIdCacheEnabled;
+        public int subsectionColumn = -1;
+        public int fastScrollLevel = SectionIndex.LEVEL_SECTION;
+        public int sectionViewCacheSize;
+        public int sectionBinds;
+        public int viewHeight;
+        public String sectionIndexToken;
+        public int maxSavedSectionsSize = 64 * 1024;
+        public final List<String> prefetched = new ArrayList<String>();
+
+        private ColumnAdapter(Context context, Cursor cursor) {
+            super(context, cursor, 0);
+        }
+
+        @Override
+        protected View newSectionView(Context context, Object item, ViewGroup parent) {
+            View view = new View(context);
+            view.setMinimumHeight(viewHeight);
+            return view;
+        }
+
+        @Override
+        protected void bindSectionView(View convertView, Context context, int position, Object item) {
+            sectionBinds++;
+            convertView.setTag(item);
+        }
+
+        @Override
+        protected View newItemView(Context context, Cursor cursor, ViewGroup parent) {
+            View view = new View(context);
+            view.setMinimumHeight(viewHeight);
+            return view;
+        }
+
+        @Override
+        protected void bindItemView(View convertView, Context context, Cursor cursor) {
+
+        }
+
+        @Override
+        protected String getSectionIndexToken(Cursor cursor) {
+            return sectionIndexToken;
+        }
+
+        @Override
+        protected int getSectionViewCacheSize() {
+            return sectionViewCacheSize;
+        }
+
+        @Override
+        protected int getMaxSavedSectionsSize() {
+            return maxSavedSectionsSize;
+        }
+
+        @Override
+        protected Object getSectionFromCursor(Cursor cursor) {
+            sectionsRead++;
+            return cursor.getString(0);
+        }
+
+        @Override
+        protected Object getSubsectionFromCursor(Cursor cursor) {
+            return subsectionColumn >= 0 ? cursor.getString(subsectionColumn) : null;
+        }
+
+        @Override
+        protected int getFastScrollSectionLevel() {
+            return fastScrollLevel;
+        }
+
+        @Override
+        protected SectionKey getSectionKey() {
+            return sectionKey;
+        }
+
+        @Override
+        protected boolean areRowsOnlyAppended() {
+            return rowsOnlyAppended;
+        }
+
+        @Override
+        protected int getSectionBuildChunkSize() {
+            return chunkSize;
+        }
+
+        @Override
+        protected boolean isItemIdCacheEnabled() {
+            return itemIdCacheEnabled;
+        }
+
+        @Override
+        protected int getPrefetchDistance() {
+            return prefetchDistance;
+        }
+
+        @Override
+        protected void onPrefetchCursorRange(Cursor cursor, int start, int end) {
+            prefetched.add(start + "-" + end);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.twotoasters.sectioncursoradaptersample.adapter;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+
+import com.twotoasters.sectioncursoradapter.SectionCursorRecyclerAdapter;
+import com.twotoasters.sectioncursoradapter.SectionKey;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+public class SectionCursorRecyclerAdapterTest {
+
+    private static final String[] COLUMNS = {"_id", "name", "title"};
+
+    private Context context;
+    private MatrixCursor cursor;
+    private TestRecyclerAdapter adapter;
+
+    @Before
+    public void setUp() {
+        context = Robolectric.application;
+        cursor = new MatrixCursor(COLUMNS);
+        cursor.addRow(new Object[] {10L, "A", "x"});
+        cursor.addRow(new Object[] {11L, "A", "x"});
+        cursor.addRow(new Object[] {12L, "B", "x"});
+        adapter = new TestRecyclerAdapter(context, cursor);
+    }
+
+    @Test
+    public void itShouldMapSectionsToViewTypes() {
+        assertThat(adapter.getItemCount()).isEqualTo(5);
+        assertThat(adapter.getItemViewType(0)).isEqualTo(TestRecyclerAdapter.SECTION);
+        assertThat(adapter.getItemViewType(1)).isEqualTo(TestRecyclerAdapter.ITEM);
+        assertThat(adapter.getItemViewType(2)).isEqualTo(TestRecyclerAdapter.ITEM);
+        assertThat(adapter.getItemViewType(3)).isEqualTo(TestRecyclerAdapter.SECTION);
+        assertThat(adapter.getItemViewType(4)).isEqualTo(TestRecyclerAdapter.ITEM);
+        assertThat(adapter.getCursorPositionWithoutSections(4)).isEqualTo(2);
+        assertThat(adapter.getPositionForSection(1)).isEqualTo(3);
+    }
+
+    @Test
+    public void itShouldBindSectionsAndRows() {
+        ViewGroup parent = new LinearLayout(context);
+
+        Holder section = (Holder) adapter.onCreateViewHolder(parent, adapter.getItemViewType(3));
+        adapter.onBindViewHolder(section, 3);
+        assertThat(section.bound).isEqualTo("B");
+
+        Holder item = (Holder) adapter.onCreateViewHolder(parent, adapter.getItemViewType(2));
+        adapter.onBindViewHolder(item, 2);
+        assertThat(item.bound).isEqualTo(11L);
+    }
+
+    @Test
+    public void itShouldUseIdColumnForItemIds() {
+        assertThat(adapter.getItemId(1)).isEqualTo(10L);
+        assertThat(adapter.getItemId(4)).isEqualTo(12L);
+        assertThat(adapter.getItemId(0)).isLessThan(0L);
+        assertThat(adapter.getItemId(0)).isNotEqualTo(adapter.getItemId(3));
+    }
+
+    @Test
+    public void itShouldRebuildSectionsOnSwap() {
+        MatrixCursor newCursor = new MatrixCursor(COLUMNS);
+        newCursor.addRow(new Object[] {1L, "C", "x"});
+
+        Cursor old = adapter.swapCursor(newCursor);
+        assertThat(old).isSameAs(cursor);
+        assertThat(adapter.getItemCount()).isEqualTo(2);
+        assertThat(adapter.isSection(0)).isTrue();
+
+        adapter.swapCursor(null);
+        assertThat(adapter.getItemCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void itShouldNotifyOnlyChangedItemsWhenDiffing() {
+        TestRecyclerAdapter diffAdapter = new TestRecyclerAdapter(context, null);
+        diffAdapter.diffEnabled = true;
+        RecordingObserver observer = new RecordingObserver();
+        diffAdapter.registerAdapterDataObserver(observer);
+
+        diffAdapter.swapCursorAsync(cursor);
+        assertThat(observer.events).containsExactly("inserted 0 5");
+
+        MatrixCursor newCursor = new MatrixCursor(COLUMNS);
+        newCursor.addRow(new Object[] {10L, "A", "y"});
+        newCursor.addRow(new Object[] {12L, "B", "x"});
+        newCursor.addRow(new Object[] {13L, "B", "x"});
+        observer.events.clear();
+        diffAdapter.swapCursorAsync(newCursor);
+
+        assertThat(diffAdapter.getItemCount()).isEqualTo(5);
+        assertThat(observer.events).containsExactly("removed 2 1", "inserted 4 1", "changed 1 1");
+    }
+
+    @Test
+    public void itShouldMoveRowsWhichLeaveTheirOrder() {
+        TestRecyclerAdapter diffAdapter = new TestRecyclerAdapter(context, null);
+        diffAdapter.diffEnabled = true;
+        diffAdapter.swapCursorAsync(cursor);
+        RecordingObserver observer = new RecordingObserver();
+        diffAdapter.registerAdapterDataObserver(observer);
+
+        MatrixCursor newCursor = new MatrixCursor(COLUMNS);
+        newCursor.addRow(new Object[] {12L, "A", "x"});
+        newCursor.addRow(new Object[] {10L, "A", "x"});
+        newCursor.addRow(new Object[] {11L, "A", "x"});
+        diffAdapter.swapCursorAsync(newCursor);
+
+        assertThat(observer.events).containsExactly("moved 3 1");
+    }
+
+    @Test
+    public void itShouldTurnTheOldItemsIntoTheNewOnesWhenItsNotificationsAreApplied() {
+        TestRecyclerAdapter diffAdapter = new TestRecyclerAdapter(context, null);
+        diffAdapter.diffEnabled = true;
+        RecordingObserver observer = new RecordingObserver();
+        diffAdapter.registerAdapterDataObserver(observer);
+        Random random = new Random(42);
+        Map<Long, String> oldTitles = new HashMap<Long, String>();
+
+        for (int i = 0; i < 300; i++) {
+            List<Long> oldIds = itemIds(diffAdapter);
+            Map<Long, String> newTitles = new HashMap<Long, String>();
+            diffAdapter.swapCursorAsync(newShuffledCursor(random, newTitles));
+            List<Long> newIds = itemIds(diffAdapter);
+
+            List<Long> items = new ArrayList<Long>(oldIds);
+            Set<Integer> changed = new HashSet<Integer>();
+            for (String event : observer.events) {
+                String[] parts = event.split(" ");
+                assertThat(parts).hasSize(3); // never notifyDataSetChanged
+                int first = Integer.parseInt(parts[1]);
+                int second = Integer.parseInt(parts[2]);
+                if (parts[0].equals("removed")) {
+                    items.subList(first, first + second).clear();
+                } else if (parts[0].equals("inserted")) {
+                    items.addAll(first, Collections.<Long>nCopies(second, null));
+                } else if (parts[0].equals("moved")) {
+                    items.add(second, items.remove(first));
+                } else {
+                    for (int position = first; position < first + second; position++) {
+                        changed.add(position);
+                    }
+                }
+            }
+            observer.events.clear();
+
+            assertThat(items).hasSize(newIds.size());
+            for (int position = 0; position < newIds.size(); position++) {
+                Long id = newIds.get(position);
+                boolean wasShown = oldIds.contains(id);
+                assertThat(items.get(position)).isEqualTo(wasShown ? id : null);
+                boolean titleChanged = wasShown && id >= 0 && !newTitles.get(id).equals(oldTitles.get(id));
+                assertThat(changed.contains(position)).isEqualTo(titleChanged);
+            }
+            oldTitles = newTitles;
+        }
+    }
+
+    private static List<Long> itemIds(TestRecyclerAdapter adapter) {
+        List<Long> ids = new ArrayList<Long>();
+        for (int position = 0; position < adapter.getItemCount(); position++) {
+            ids.add(adapter.getItemId(position));
+        }
+        return ids;
+    }
+
+    /**
+     * @return a cursor sorted by section holding a random part of 12 rows, in random sections and order.
+     */
+    private static MatrixCursor newShuffledCursor(Random random, Map<Long, String> titles) {
+        List<String> sections = new ArrayList<String>(Arrays.asList("A", "B", "C", "D"));
+        Collections.shuffle(sections, random);
+        List<Long> ids = new ArrayList<Long>();
+        for (long id = 1; id <= 12; id++) {
+            ids.add(id);
+        }
+        Collections.shuffle(ids, random);
+        MatrixCursor shuffled = new MatrixCursor(COLUMNS);
+        for (String section : sections) {
+            for (Long id : ids) {
+                if (random.nextInt(sections.size() + 1) == 0 && !titles.containsKey(id)) {
+                    String title = random.nextBoolean() ? "x" : "y";
+                    titles.put(id, title);
+                    shuffled.addRow(new Object[] {id, section, title});
+                }
+            }
+        }
+        return shuffled;
+    }
+
+    @Test
+    public void itShouldDropAnAsyncSwapWhenItsCursorIsClosedWhileBeingRead() {
+        final Runnable[] pending = new Runnable[1];
+        adapter.setSectionBuildExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pending[0] = command;
+            }
+        });
+        MatrixCursor newCursor = new MatrixCursor(COLUMNS) {
+            @Override
+            public String getString(int column) {
+                if (getPosition() == 1) {
+                    close(); // as a loader does after the check for a closed cursor
+                    throw new IllegalStateException("closed");
+                }
+                return super.getString(column);
+            }
+        };
+        newCursor.addRow(new Object[] {1L, "A", "x"});
+        newCursor.addRow(new Object[] {2L, "B", "x"});
+
+        adapter.swapCursorAsync(newCursor);
+        pending[0].run();
+        assertThat(adapter.getItemCount()).isEqualTo(5);
+    }
+
+    private static class RecordingObserver extends RecyclerView.AdapterDataObserver {
+
+        public final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void onChanged() {
+            events.add("changed");
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            events.add("changed " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            events.add("inserted " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            events.add("removed " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            events.add("moved " + fromPosition + " " + toPosition);
+        }
+    }
+
+    private static class Holder extends RecyclerView.ViewHolder {
+
+        public Object bound;
+
+        private Holder(View itemView) {
+            super(itemView);
+        }
+    }
+
+    private static class TestRecyclerAdapter extends SectionCursorRecyclerAdapter<Holder, Holder> {
+
+        static final int SECTION = VIEW_TYPE_SECTION;
+        static final int ITEM = VIEW_TYPE_ITEM;
+
+        public boolean diffEnabled;
+
+        private TestRecyclerAdapter(Context context, Cursor cursor) {
+            super(context, cursor);
+        }
+
+        @Override
+        protected SectionKey getSectionKey() {
+            return SectionKey.stringValue("name");
+        }
+
+        @Override
+        protected Object getSectionFromCursor(Cursor cursor) {
+            return null;
+        }
+
+        @Override
+        protected boolean isItemDiffEnabled() {
+            return diffEnabled;
+        }
+
+        @Override
+        protected int getItemContentHash(Cursor cursor) {
+            return cursor.getString(getColumnIndex(cursor, "title")).hashCode();
+        }
+
+        @Override
+        protected Holder onCreateSectionViewHolder(ViewGroup parent) {
+            return new Holder(new View(parent.getContext()));
+        }
+
+        @Override
+        protected void onBindSectionViewHolder(Holder holder, int position, Object section) {
+            holder.bound = section;
+        }
+
+        @Override
+        protected Holder onCreateItemViewHolder(ViewGroup parent) {
+            return new Holder(new View(parent.getContext()));
+        }
+
+        @Override
+        protected void onBindItemViewHolder(Holder holder, Cursor cursor) {
+            holder.bound = cursor.getLong(getColumnIndex(cursor, "_id"));
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.twotoasters.sectioncursoradaptersample.adapter;
+
+import android.database.Cursor;
+
+import com.twotoasters.sectioncursoradapter.SectionIndex;
+import com.twotoasters.sectioncursoradapter.SectionKey;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+public class SectionIndexTest {
+
+    private static final SortedMap<Integer, Object> SECTION_MAP;
+
+    static {
+        SECTION_MAP = new TreeMap<Integer, Object>();
+        SECTION_MAP.put(2, "A");
+        SECTION_MAP.put(4, "B");
+        SECTION_MAP.put(5, "C");
+    }
+
+    @Test
+    public void itShouldBeEmptyForNullOrEmptyMaps() {
+        assertThat(SectionIndex.fromSortedMap(null).size()).isEqualTo(0);
+        assertThat(SectionIndex.fromSortedMap(new TreeMap<Integer, Object>()).size()).isEqualTo(0);
+    }
+
+    @Test
+    public void itShouldFindSectionsByListPosition() {
+        SectionIndex index = SectionIndex.fromSortedMap(SECTION_MAP);
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.indexOfSection(0)).isEqualTo(-1);
+        assertThat(index.indexOfSection(2)).isEqualTo(0);
+        assertThat(index.indexOfSection(3)).isEqualTo(-2);
+        assertThat(index.indexOfSection(4)).isEqualTo(1);
+        assertThat(index.indexOfSection(5)).isEqualTo(2);
+        assertThat(index.indexOfSection(9)).isEqualTo(-4);
+        assertThat(index.getValueAt(4)).isEqualTo("B");
+        assertThat(index.getValueAt(3)).isNull();
+    }
+
+    @Test
+    public void itShouldRoundTripThroughSortedMap() {
+        SectionIndex index = SectionIndex.fromSortedMap(SECTION_MAP);
+        assertThat(index.toSortedMap()).isEqualTo(SECTION_MAP);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void itShouldRejectDescendingPositions() {
+        TreeMap<Integer, Object> reversed = new TreeMap<Integer, Object>(Collections.reverseOrder());
+        reversed.putAll(SECTION_MAP);
+        SectionIndex.fromSortedMap(reversed);
+    }
+
+    @Test
+    public void itShouldBuildSectionsFromSortedRows() {
+        SectionIndex.Builder builder = new SectionIndex.Builder(true);
+        for (String section : new String[] {"A", "A", "B", "C", "C", "A"}) {
+            builder.appendRow(section);
+        }
+        SectionIndex index = builder.build();
+        assertThat(index.size()).isEqualTo(4);
+        assertThat(index.getSectionPosition(0)).isEqualTo(0);
+        assertThat(index.getSectionPosition(1)).isEqualTo(3);
+        assertThat(index.getSectionPosition(2)).isEqualTo(5);
+        assertThat(index.getSectionPosition(3)).isEqualTo(8);
+        assertThat(index.getSectionValue(3)).isEqualTo("A");
+    }
+
+    @Test
+    public void itShouldBuildSectionsFromUnsortedRows() {
+        SectionIndex.Builder builder = new SectionIndex.Builder(false);
+        for (String section : new String[] {"A", "B", "A", null, "B", null}) {
+            builder.appendRow(section);
+        }
+        SectionIndex index = builder.build();
+        assertThat(index.size()).isEqualTo(3);
+        assertThat(index.getSectionPosition(0)).isEqualTo(0);
+        assertThat(index.getSectionPosition(1)).isEqualTo(2);
+        assertThat(index.getSectionPosition(2)).isEqualTo(5);
+        assertThat(index.getSectionValue(2)).isNull();
+    }
+
+    @Test
+    public void itShouldReturnTheSameIndexFromItsMapView() {
+        SectionIndex index = SectionIndex.fromSortedMap(SECTION_MAP);
+        SortedMap<Integer, Object> view = index.asSortedMap();
+        assertThat(view).isEqualTo(SECTION_MAP);
+        assertThat(view.headMap(5)).hasSize(2);
+        assertThat(view.tailMap(3).firstKey()).isEqualTo(4);
+        assertThat(SectionIndex.fromSortedMap(view)).isSameAs(index);
+    }
+
+    @Test
+    public void itShouldCopyItsMapViewWhenItIsChanged() {
+        SectionIndex index = SectionIndex.fromSortedMap(SECTION_MAP);
+        SortedMap<Integer, Object> view = index.asSortedMap();
+        view.put(9, "D");
+        view.remove(2);
+
+        assertThat(view.keySet()).containsExactly(4, 5, 9);
+        assertThat(index.size()).isEqualTo(3);
+        SectionIndex changed = SectionIndex.fromSortedMap(view);
+        assertThat(changed).isNotSameAs(index);
+        assertThat(changed.getValueAt(9)).isEqualTo("D");
+    }
+
+    @Test
+    public void itShouldEstimateRetainedSizeFromSectionsAndValues() {
+        long emptySize = SectionIndex.EMPTY.estimateRetainedSize();
+        SectionIndex.Builder builder = new SectionIndex.Builder(true);
+        for (int i = 0; i < 100; i++) {
+            builder.appendRow(Integer.valueOf(i));
+        }
+        long intSize = builder.build().estimateRetainedSize();
+
+        builder = new SectionIndex.Builder(true);
+        for (int i = 0; i < 100; i++) {
+            builder.appendRow("Section " + i);
+        }
+        long stringSize = builder.build().estimateRetainedSize();
+
+        assertThat(emptySize).isGreaterThan(0L);
+        assertThat(intSize).isGreaterThan(emptySize + 100 * 8);
+        assertThat(stringSize).isGreaterThan(intSize);
+    }
+
+    @Test
+    public void itShouldGiveEveryNewIndexAHigherGeneration() {
+        SectionIndex first = SectionIndex.fromSortedMap(SECTION_MAP);
+        SectionIndex second = new SectionIndex.Builder(true).appendRow("A").build();
+        assertThat(second.getGeneration()).isGreaterThan(first.getGeneration());
+        assertThat(SectionIndex.fromSortedMap(second.asSortedMap()).getGeneration()).isEqualTo(second.getGeneration());
+    }
+
+    @Test
+    public void itShouldKeepRowIdsOnlyWhenEveryRowHasOne() {
+        SectionIndex.Builder builder = new SectionIndex.Builder(true);
+        builder.appendRow("A").appendRowId(3L).appendRow("A").appendRowId(4L);
+        SectionIndex withIds = builder.build();
+        builder.appendRow("B");
+        SectionIndex withoutIds = builder.build();
+
+        assertThat(withIds.getRowIdCount()).isEqualTo(2);
+        assertThat(withIds.getRowId(1)).isEqualTo(4L);
+        assertThat(withoutIds.getRowIdCount()).isEqualTo(0);
+
+        SectionIndex continued = new SectionIndex.Builder(withIds, true).appendRow("B").appendRowId(5L).build();
+        assertThat(continued.getRowIdCount()).isEqualTo(3);
+        assertThat(continued.getRowId(0)).isEqualTo(3L);
+        assertThat(continued.getRowId(2)).isEqualTo(5L);
+    }
+
+    @Test
+    public void itShouldMapNestedSectionsByLevel() {
+        SectionIndex index = new SectionIndex.Builder(true)
+                .appendRow("FR", "Paris").appendRow("FR", "Paris").appendRow("FR", "Lyon")
+                .appendRow("US", null).appendRow("US", "Boston")
+                .build();
+
+        assertThat(index.size()).isEqualTo(5);
+        assertThat(index.hasSubsections()).isTrue();
+        assertThat(index.getSectionCount(SectionIndex.LEVEL_SECTION)).isEqualTo(2);
+        assertThat(index.getSectionCount(SectionIndex.LEVEL_SUBSECTION)).isEqualTo(3);
+        assertThat(index.getSectionLevel(3)).isEqualTo(SectionIndex.LEVEL_SECTION);
+        assertThat(index.getSectionValue(index.getSectionIndex(SectionIndex.LEVEL_SUBSECTION, 2))).isEqualTo("Boston");
+        assertThat(index.getSectionPosition(index.getSectionIndex(SectionIndex.LEVEL_SECTION, 1))).isEqualTo(6);
+
+        assertThat(index.getIndexWithinLevel(SectionIndex.LEVEL_SECTION, 5)).isEqualTo(0);
+        assertThat(index.getIndexWithinLevel(SectionIndex.LEVEL_SUBSECTION, 5)).isEqualTo(1);
+        assertThat(index.getIndexWithinLevel(SectionIndex.LEVEL_SECTION, 7)).isEqualTo(1);
+        assertThat(index.getIndexWithinLevel(SectionIndex.LEVEL_SUBSECTION, 7)).isEqualTo(-1);
+        assertThat(index.getIndexWithinLevel(SectionIndex.LEVEL_SUBSECTION, 9)).isEqualTo(2);
+        assertThat(index.getCursorPosition(9)).isEqualTo(4);
+
+        SectionIndex continued = new SectionIndex.Builder(index, true)
+                .appendRow("US", "Boston").appendRow("US", "Denver").build();
+        assertThat(continued.size()).isEqualTo(6);
+        assertThat(continued.getSectionPosition(5)).isEqualTo(11);
+    }
+
+    @Test
+    public void itShouldOnlyAddNestedSectionsOnceWhenNotSorted() {
+        SectionIndex index = new SectionIndex.Builder(false)
+                .appendRow("A", "x").appendRow("B", "x").appendRow("A", "x").appendRow("A", "y")
+                .build();
+
+        assertThat(index.toSortedMap().keySet()).containsExactly(0, 1, 3, 4, 7);
+        assertThat(index.getSectionCount(SectionIndex.LEVEL_SUBSECTION)).isEqualTo(3);
+    }
+
+    @Test
+    public void itShouldCountRowsOfSectionsAndSubsections() {
+        SectionIndex index = new SectionIndex.Builder(true)
+                .appendRow("FR", "Paris").appendRow("FR", "Paris").appendRow("FR", "Lyon")
+                .appendRow("US", null).appendRow("US", "Boston")
+                .build();
+
+        assertThat(index.getSectionItemCount(0)).isEqualTo(3);
+        assertThat(index.getSectionItemCount(1)).isEqualTo(2);
+        assertThat(index.getSectionItemCount(2)).isEqualTo(1);
+        assertThat(index.getSectionCursorRange(3)).isEqualTo(new int[] {3, 5});
+        assertThat(index.getSectionCursorRange(4)).isEqualTo(new int[] {4, 5});
+    }
+
+    @Test
+    public void itShouldCountEveryRowOfASectionWhenNotSorted() {
+        SectionIndex index = new SectionIndex.Builder(false)
+                .appendRow("A", "x").appendRow("B", "x").appendRow("A", "x").appendRow("A", "y")
+                .build();
+
+        assertThat(index.getSectionItemCount(0)).isEqualTo(3);
+        assertThat(index.getSectionItemCount(1)).isEqualTo(2);
+        assertThat(index.getSectionItemCount(2)).isEqualTo(1);
+        assertThat(index.getSectionItemCount(4)).isEqualTo(1);
+        assertThat(index.getSectionCursorRange(2)).isEqualTo(new int[] {1, 4});
+
+        SectionIndex appended = new SectionIndex.Builder(index, false).appendRow("B", null).build();
+        assertThat(appended.getSectionItemCount(0)).isEqualTo(3);
+        assertThat(appended.getSectionItemCount(2)).isEqualTo(2);
+    }
+
+    @Test
+    public void itShouldNotKnowTheLastSectionsCountWithoutARowCount() {
+        SectionIndex index = SectionIndex.fromSortedMap(SECTION_MAP);
+
+        assertThat(index.getSectionCursorStart(0)).isEqualTo(2);
+        assertThat(index.getSectionItemCount(0)).isEqualTo(1);
+        assertThat(index.getSectionItemCount(1)).isEqualTo(0);
+        assertThat(index.getSectionItemCount(2)).isEqualTo(SectionIndex.UNKNOWN_ROW_COUNT);
+    }
+
+    @Test
+    public void itShouldReuseThePreviousIndexsValueInstancesWhenBuilding() {
+        SectionIndex previous = new SectionIndex.Builder(true).appendRow(new String("A")).appendRow(new String("B"))
+                .build();
+        Object[] previousValues = previous.getSectionValues();
+        SectionIndex index = new SectionIndex.Builder(true).appendRow(new String("B")).appendRow("C")
+                .internValues(previous).build();
+
+        assertThat(index.getSectionValues()[0]).isSameAs(previousValues[1]);
+        assertThat(index.getSectionValues()[1]).isEqualTo("C");
+        assertThat(previous.getSectionValues()).isEqualTo(previousValues);
+    }
+
+    @Test
+    public void itShouldOnlyReadTheSectionOfRowsStartingOneWhenNotSorted() {
+        final String[] rows = {"A", "A", "B", "B", "A", "A"};
+        final int[] reads = new int[1];
+        SectionKey.Scanner scanner = new SectionKey.Scanner() {
+            private int mRow = -1;
+
+            @Override
+            public boolean startsNewSection(Cursor cursor) {
+                mRow++;
+                return mRow == 0 || !rows[mRow].equals(rows[mRow - 1]);
+            }
+
+            @Override
+            public Object getSection() {
+                reads[0]++;
+                return rows[mRow];
+            }
+        };
+        SectionIndex.Builder builder = new SectionIndex.Builder(false);
+        for (int i = 0; i < rows.length; i++) {
+            builder.appendRow((Cursor) null, scanner, i % 2 == 0 ? "x" : null);
+        }
+        SectionIndex index = builder.build();
+
+        assertThat(reads[0]).isEqualTo(3);
+        assertThat(index.toSortedMap().keySet()).containsExactly(0, 1, 4, 5);
+        assertThat(index.getSectionItemCount(0)).isEqualTo(4);
+        assertThat(index.getSectionItemCount(1)).isEqualTo(2);
+        assertThat(index.getSectionItemCount(2)).isEqualTo(2);
+    }
+}